@@ -12,21 +12,44 @@ import simpledb.log.LogMgr;
  * the number of times the buffer has been pinned,
  * whether its contents have been modified,
  * and if so, the id and lsn of the modifying transaction.
+ * <p>
+ * The last {@link #LSN_SIZE} bytes of every page hold the page LSN:
+ * the LSN of the latest logged change to the page.
+ * Recovery compares it with the LSN of each update record,
+ * to decide whether the page on disk already contains the update.
  * 
  * @author Edward Sciore
  */
 public class Buffer {
+   /**
+    * The number of bytes at the end of each page that hold its LSN.
+    */
+   public static final int LSN_SIZE = Long.BYTES;
+
    private FileMgr fm;
    private LogMgr lm;
+   private BufferStats stats;
    private Page contents;
    private BlockId blk = null;
    private int pins = 0;
+   private int refs = 0;
    private int txnum = -1;
-   private int lsn = -1;
+   private long lsn = -1;
+   // the LSN of the first logged change since the page was last written
+   private long recLSN = -1;
+   private boolean unlogged = false;
 
    public Buffer(FileMgr fm, LogMgr lm) {
+      this(fm, lm, null);
+   }
+
+   /**
+    * Creates a buffer that counts its writes in the specified statistics.
+    */
+   Buffer(FileMgr fm, LogMgr lm, BufferStats stats) {
       this.fm = fm;
       this.lm = lm;
+      this.stats = stats;
       contents = new Page(fm.blockSize());
    }
 
@@ -44,10 +67,53 @@ public class Buffer {
       return blk;
    }
 
-   public void setModified(int txnum, int lsn) {
+   /**
+    * Marks the buffer as modified by the specified transaction.
+    * A logged change also becomes the page LSN;
+    * a change made without logging (lsn = -1) cannot be redone,
+    * so the buffer must be written before the transaction commits
+    * (see {@link BufferMgr#flushUnlogged(int)}).
+    * 
+    * @param txnum the id of the modifying transaction
+    * @param lsn   the LSN of the change's log record, or -1
+    */
+   public void setModified(int txnum, long lsn) {
       this.txnum = txnum;
-      if (lsn >= 0)
+      if (lsn >= 0) {
          this.lsn = lsn;
+         if (recLSN < 0)
+            recLSN = lsn;
+         contents.setLong(fm.blockSize() - LSN_SIZE, lsn);
+      } else
+         unlogged = true;
+   }
+
+   /**
+    * Returns the LSN of the latest logged change to the page,
+    * or 0 if the page has never been changed with logging.
+    * 
+    * @return the page LSN
+    */
+   public long pageLSN() {
+      return contents.getLong(fm.blockSize() - LSN_SIZE);
+   }
+
+   /**
+    * Returns the LSN of the first logged change to the page
+    * since it was last written, or -1 if it holds no such change.
+    * Recovery must redo the log from this LSN to restore the page.
+    * 
+    * @return the page's recovery LSN
+    */
+   public synchronized long recoveryLSN() {
+      return txnum >= 0 ? recLSN : -1;
+   }
+
+   /**
+    * Returns true if the buffer holds changes that were not logged.
+    */
+   boolean hasUnloggedChanges() {
+      return txnum >= 0 && unlogged;
    }
 
    /**
@@ -65,28 +131,41 @@ public class Buffer {
    }
 
    /**
-    * Reads the contents of the specified block into
-    * the contents of the buffer.
+    * Assigns the buffer to the specified block, without reading it
+    * (see {@link #read()}), or to no block at all for a reserved buffer.
     * If the buffer was dirty, then its previous contents
     * are first written to disk.
     * 
-    * @param b a reference to the data block
+    * @param b a reference to the data block, or null
     */
-   void assignToBlock(BlockId b) {
+   synchronized void assign(BlockId b) {
       flush();
       blk = b;
-      fm.read(blk, contents);
       pins = 0;
+      refs = 0;
+   }
+
+   /**
+    * Reads the contents of the buffer's block into the buffer.
+    * The caller may instead read several blocks into their
+    * buffers at once.
+    */
+   void read() {
+      fm.read(blk, contents);
    }
 
    /**
     * Write the buffer to its disk block if it is dirty.
     */
-   void flush() {
+   synchronized void flush() {
       if (txnum >= 0) {
          lm.flush(lsn);
          fm.write(blk, contents);
          txnum = -1;
+         recLSN = -1;
+         unlogged = false;
+         if (stats != null)
+            stats.written(blk);
       }
    }
 
@@ -95,6 +174,15 @@ public class Buffer {
     */
    void pin() {
       pins++;
+      refs++;
+   }
+
+   /**
+    * Returns the number of times the buffer has been pinned
+    * since it was assigned its block.
+    */
+   int references() {
+      return refs;
    }
 
    /**
@@ -1,66 +1,417 @@
 package simpledb.buffer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
 import simpledb.file.BlockId;
 import simpledb.file.FileMgr;
+import simpledb.file.Page;
 import simpledb.log.LogMgr;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
+ * The pool is partitioned into stripes, keyed by the hash of the
+ * block, so that threads pinning different blocks seldom contend.
+ * Each stripe has its own lock and condition, a page table that maps
+ * each of its buffered blocks to its buffer, and a {@link ReplacementPolicy}
+ * that chooses among its unpinned buffers.
+ * The unpinned buffers that hold no block are kept on a shared free list.
+ * When a stripe needs a buffer and has none to replace,
+ * it takes one from another stripe, so that every buffer in the pool
+ * is available to every block.
+ * <p>
+ * A block is read from disk after its stripe's lock has been released;
+ * the buffer is marked as loading meanwhile, and anyone else who
+ * pins the block waits on the stripe's condition until it is loaded.
+ * No thread ever holds two stripe locks at once.
+ * <p>
+ * A scan that reads many blocks once can pin them through a
+ * {@link BufferRing}, which limits the number of buffers it occupies.
+ * <p>
+ * Optionally, a background {@link DirtyPageWriter} writes dirty,
+ * unpinned buffers ahead of their replacement. Like a read,
+ * its write is done outside the stripe's lock; the buffer is
+ * marked as being written meanwhile, and is not replaced.
+ * <p>
+ * The pool can be resized while in use; see {@link #resize(int)}.
  * 
  * @author Edward Sciore
- *
+ * 
  */
 public class BufferMgr {
-   private Buffer[] bufferpool;
-   private int numAvailable;
    private static final long MAX_TIME = 10000; // 10 seconds
 
+   private FileMgr fm;
+   private LogMgr lm;
+   // replaced, never modified, when the pool is resized
+   private volatile Buffer[] bufferpool;
+   // the number of buffers still to be removed by a shrink
+   private AtomicInteger excess = new AtomicInteger();
+   private Stripe[] stripes;
+   private Queue<Buffer> freeList = new ConcurrentLinkedQueue<>();
+   private AtomicInteger numAvailable;
+   // incremented whenever a buffer is released, so that a waiter can tell if it missed one
+   private AtomicLong releases = new AtomicLong();
+   private BufferStats stats = new BufferStats(this);
+   private DirtyPageWriter writer;
+   private Thread writerThread;
+
    /**
     * Creates a buffer manager having the specified number
-    * of buffer slots.
+    * of buffer slots, which uses LRU replacement.
     * This constructor depends on a {@link FileMgr} and
     * {@link simpledb.log.LogMgr LogMgr} object.
     * 
     * @param numbuffs the number of buffer slots to allocate
     */
    public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs) {
+      this(fm, lm, numbuffs, ReplacementStrategy.LRU);
+   }
+
+   /**
+    * Creates a buffer manager having the specified number
+    * of buffer slots and the specified replacement policy,
+    * and a number of stripes suited to the pool size
+    * and the number of processors.
+    * 
+    * @param numbuffs the number of buffer slots to allocate
+    * @param strategy the replacement policy
+    */
+   public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, ReplacementStrategy strategy) {
+      this(fm, lm, numbuffs, strategy, defaultStripes(numbuffs));
+   }
+
+   /**
+    * Creates a buffer manager having the specified number
+    * of buffer slots, replacement policy and stripes.
+    * 
+    * @param numbuffs   the number of buffer slots to allocate
+    * @param strategy   the replacement policy
+    * @param numstripes the number of stripes
+    */
+   public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, ReplacementStrategy strategy, int numstripes) {
+      this.fm = fm;
+      this.lm = lm;
       bufferpool = new Buffer[numbuffs];
-      numAvailable = numbuffs;
-      for (int i = 0; i < numbuffs; i++)
-         bufferpool[i] = new Buffer(fm, lm);
+      numAvailable = new AtomicInteger(numbuffs);
+      for (int i = 0; i < numbuffs; i++) {
+         bufferpool[i] = new Buffer(fm, lm, stats);
+         freeList.add(bufferpool[i]);
+      }
+      stripes = new Stripe[numstripes];
+      int stripesize = Math.max(1, numbuffs / numstripes);
+      for (int i = 0; i < numstripes; i++)
+         stripes[i] = new Stripe(i, strategy.newPolicy(stripesize));
    }
 
    /**
     * Returns the number of available (i.e. unpinned) buffers.
+    * The count is kept without locking, and so is
+    * only a snapshot when other threads are pinning.
     * 
     * @return the number of available buffers
     */
-   public synchronized int available() {
-      return numAvailable;
+   public int available() {
+      return numAvailable.get();
+   }
+
+   /**
+    * Returns the number of buffers in the pool.
+    * While a shrink is pending, this is more than
+    * the size requested by {@link #resize(int)}.
+    * 
+    * @return the number of buffers
+    */
+   public int size() {
+      return bufferpool.length;
+   }
+
+   /**
+    * Changes the number of buffers in the pool,
+    * without stopping the transactions that are using it.
+    * To grow, new buffers are added to the free list.
+    * To shrink, unpinned buffers are taken out of the pool,
+    * after their blocks are written if dirty;
+    * if too few buffers are unpinned, the remaining ones are
+    * taken out as they are unpinned.
+    * A grow cancels any part of an earlier shrink still pending.
+    * 
+    * @param numbuffs the new number of buffers
+    */
+   public synchronized void resize(int numbuffs) {
+      if (numbuffs < 1)
+         throw new IllegalArgumentException("a buffer pool needs at least one buffer");
+      int target = bufferpool.length - excess.get();
+      if (numbuffs < target) {
+         excess.addAndGet(target - numbuffs);
+         retireExcess();
+         return;
+      }
+      int add = numbuffs - target;
+      while (add > 0) {
+         int e = excess.get();
+         if (e <= 0)
+            break;
+         if (excess.compareAndSet(e, e - 1))
+            add--;
+      }
+      if (add > 0) {
+         Buffer[] newpool = Arrays.copyOf(bufferpool, bufferpool.length + add);
+         for (int i = bufferpool.length; i < newpool.length; i++) {
+            newpool[i] = new Buffer(fm, lm, stats);
+            freeList.add(newpool[i]);
+         }
+         bufferpool = newpool;
+         numAvailable.addAndGet(add);
+         wakeWaiters();
+      }
+   }
+
+   /**
+    * Returns the statistics of the pool,
+    * which are updated as the pool is used.
+    * 
+    * @return the pool's statistics
+    */
+   public BufferStats stats() {
+      return stats;
    }
 
    /**
-    * Flushes the dirty buffers modified by the specified transaction.
+    * Flushes the dirty buffers modified by the specified transaction,
+    * and then forces any data files that have unforced writes
+    * (which matters only under the GROUP sync policy).
+    * Blocks of temporary files are not flushed, since their
+    * contents need not survive a crash; they are written
+    * only when their buffers are replaced.
     * 
     * @param txnum the transaction's id number
     */
-   public synchronized void flushAll(int txnum) {
-      for (Buffer buff : bufferpool)
-         if (buff.modifyingTx() == txnum)
+   public void flushAll(int txnum) {
+      for (Buffer buff : bufferpool) {
+         BlockId blk = buff.block();
+         if (buff.modifyingTx() == txnum && blk != null && !FileMgr.isTemp(blk.fileName()))
+            buff.flush();
+      }
+      fm.syncAll();
+   }
+
+   /**
+    * Flushes every dirty buffer, whichever transaction modified it,
+    * and then forces the data files.
+    * A checkpoint does this, so that recovery need not redo
+    * any log record written before it.
+    * Blocks of temporary files are not flushed.
+    */
+   public void flushAll() {
+      for (Buffer buff : bufferpool) {
+         BlockId blk = buff.block();
+         if (buff.modifyingTx() >= 0 && blk != null && !FileMgr.isTemp(blk.fileName()))
+            buff.flush();
+      }
+      fm.syncAll();
+   }
+
+   /**
+    * Returns the dirty page table: each block whose buffer holds
+    * logged changes that are not yet on disk, with the LSN
+    * of the first of those changes.
+    * Blocks of temporary files are not included.
+    * 
+    * @return the recovery LSN of each dirty block
+    */
+   public Map<BlockId, Long> dirtyPages() {
+      Map<BlockId, Long> dpt = new HashMap<>();
+      for (Buffer buff : bufferpool) {
+         synchronized (buff) {
+            BlockId blk = buff.block();
+            long reclsn = buff.recoveryLSN();
+            if (reclsn >= 0 && blk != null && !FileMgr.isTemp(blk.fileName()))
+               dpt.put(blk, reclsn);
+         }
+      }
+      return dpt;
+   }
+
+   /**
+    * Flushes the buffers whose first unwritten logged change
+    * is older than the specified LSN, and then forces the data files.
+    * A checkpoint does this, so that a page that stays dirty
+    * does not hold the redo point back indefinitely.
+    * 
+    * @param lsn the LSN before which no unwritten change should remain
+    */
+   public void flushOlderThan(long lsn) {
+      for (Buffer buff : bufferpool) {
+         long reclsn = buff.recoveryLSN();
+         BlockId blk = buff.block();
+         if (reclsn >= 0 && reclsn < lsn && blk != null && !FileMgr.isTemp(blk.fileName()))
             buff.flush();
+      }
+      fm.syncAll();
+   }
+
+   /**
+    * Flushes the buffers of the specified transaction that hold
+    * changes made without logging, such as the formatting of a new page,
+    * and then forces the data files.
+    * A committing transaction calls this method: its logged changes
+    * can be redone from the log, but these cannot.
+    * 
+    * @param txnum the transaction's id number
+    */
+   public void flushUnlogged(int txnum) {
+      boolean flushed = false;
+      for (Buffer buff : bufferpool) {
+         BlockId blk = buff.block();
+         if (buff.modifyingTx() == txnum && buff.hasUnloggedChanges()
+               && blk != null && !FileMgr.isTemp(blk.fileName())) {
+            buff.flush();
+            flushed = true;
+         }
+      }
+      if (flushed)
+         fm.syncAll();
+   }
+
+   /**
+    * Starts a background thread that writes dirty, unpinned buffers
+    * to disk at the specified interval, at most a pool's worth at a time.
+    * Has no effect if the writer is already running.
+    * 
+    * @param interval the number of milliseconds between rounds
+    */
+   public synchronized void startWriter(long interval) {
+      if (writer != null)
+         return;
+      writer = new DirtyPageWriter(this, interval, bufferpool.length);
+      writerThread = new Thread(writer, "buffer writer");
+      writerThread.setDaemon(true);
+      writerThread.start();
+   }
+
+   /**
+    * Stops the background writer, if it is running,
+    * and waits for its current round to finish.
+    */
+   public synchronized void stopWriter() {
+      if (writer == null)
+         return;
+      writer.stop();
+      writerThread.interrupt();
+      try {
+         writerThread.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      writer = null;
+      writerThread = null;
+   }
+
+   /**
+    * Writes up to the specified number of dirty, unpinned buffers,
+    * in file and block order so that adjacent writes can be coalesced.
+    * Each buffer is marked as being written under its stripe's lock,
+    * and then written without it, so that pins of the stripe's
+    * blocks do not wait for the write. The buffer keeps its block
+    * meanwhile, since replacement passes it over; it may be pinned,
+    * but a change to its page waits for the write, which holds the
+    * buffer's monitor. As with replacement, the log is flushed
+    * before the page is written.
+    * 
+    * @param max the maximum number of buffers to write
+    * @return the number of buffers written
+    */
+   int writeDirty(int max) {
+      Map<BlockId, Buffer> dirty = new TreeMap<>(
+            Comparator.comparing(BlockId::fileName).thenComparingInt(BlockId::number));
+      for (Buffer buff : bufferpool) {
+         BlockId blk = buff.block();
+         if (blk != null && buff.modifyingTx() >= 0 && !buff.isPinned())
+            dirty.put(blk, buff);
+      }
+
+      int count = 0;
+      for (Map.Entry<BlockId, Buffer> e : dirty.entrySet()) {
+         if (count >= max)
+            break;
+         BlockId blk = e.getKey();
+         Buffer buff = e.getValue();
+         Stripe s = stripeFor(blk);
+         s.lock.lock();
+         try {
+            // the buffer may have been pinned or replaced since it was chosen
+            if (!blk.equals(buff.block()) || buff.isPinned() || buff.modifyingTx() < 0
+                  || s.loading.contains(buff))
+               continue;
+            s.writing.add(buff);
+         } finally {
+            s.lock.unlock();
+         }
+         try {
+            buff.flush();
+            count++;
+         } finally {
+            s.lock.lock();
+            try {
+               s.writing.remove(buff);
+            } finally {
+               s.lock.unlock();
+            }
+            // a pin may have found no other buffer to replace
+            wakeWaiters();
+         }
+      }
+      return count;
    }
 
    /**
     * Unpins the specified data buffer. If its pin count
-    * goes to zero, then notify any waiting threads.
+    * goes to zero, then wake any threads waiting for a buffer.
     * 
     * @param buff the buffer to be unpinned
     */
-   public synchronized void unpin(Buffer buff) {
-      buff.unpin();
-      if (!buff.isPinned()) {
-         numAvailable++;
-         notifyAll();
+   public void unpin(Buffer buff) {
+      BlockId blk = buff.block();
+      boolean released;
+      if (blk == null) {
+         // a reserved buffer, which only its owner can see
+         buff.unpin();
+         released = !buff.isPinned();
+         if (released)
+            freeList.add(buff);
+      } else {
+         Stripe s = stripeFor(blk);
+         s.lock.lock();
+         try {
+            buff.unpin();
+            released = !buff.isPinned();
+            if (released)
+               s.policy.unpinned(buff);
+         } finally {
+            s.lock.unlock();
+         }
+      }
+      if (released) {
+         numAvailable.incrementAndGet();
+         if (excess.get() > 0)
+            retireExcess();
+         wakeWaiters();
       }
    }
 
@@ -73,86 +424,595 @@ public class BufferMgr {
     * @param blk a reference to a disk block
     * @return the buffer pinned to that block
     */
-   public synchronized Buffer pin(BlockId blk) {
-      try {
-         long timestamp = System.currentTimeMillis();
-         Buffer buff = tryToPin(blk);
-         while (buff == null && !waitingTooLong(timestamp)) {
-            wait(MAX_TIME);
-            buff = tryToPin(blk);
+   public Buffer pin(BlockId blk) {
+      return pin(blk, null);
+   }
+
+   /**
+    * Pins a buffer to the specified block, as {@link #pin(BlockId)} does;
+    * if the block is not in the pool, the buffer is taken from the ring.
+    * 
+    * @param blk  a reference to a disk block
+    * @param ring the scan's ring of buffers, or null
+    * @return the buffer pinned to that block
+    */
+   public Buffer pin(BlockId blk, BufferRing ring) {
+      return waitFor(stripeFor(blk), () -> tryToPin(blk, ring));
+   }
+
+   /**
+    * Pins buffers to a run of consecutive blocks, potentially
+    * waiting until enough buffers become available.
+    * The blocks that are not already in the pool are read
+    * with one scatter read per run of consecutive missing blocks.
+    * If the buffers do not become available within a fixed
+    * time period, then a {@link BufferAbortException} is thrown.
+    * 
+    * @param first the first block of the run
+    * @param count the number of blocks to pin
+    * @return the buffers pinned to those blocks, in block order
+    */
+   public Buffer[] pinRange(BlockId first, int count) {
+      return pinRange(first, count, null);
+   }
+
+   /**
+    * Pins buffers to a run of consecutive blocks, as
+    * {@link #pinRange(BlockId, int)} does; the buffers for the blocks
+    * that are not in the pool are taken from the ring.
+    * 
+    * @param first the first block of the run
+    * @param count the number of blocks to pin
+    * @param ring  the scan's ring of buffers, or null
+    * @return the buffers pinned to those blocks, in block order
+    */
+   public Buffer[] pinRange(BlockId first, int count, BufferRing ring) {
+      return waitFor(stripeFor(first), () -> tryToPinRange(first, count, ring));
+   }
+
+   /**
+    * Returns a reserved buffer page with no associated file block.
+    * 
+    * @return a reserved buffer page with no associated file block.
+    */
+   public Buffer reserve() {
+      return waitFor(stripes[0], () -> {
+         Buffer buff = takeFrame(stripes[0]);
+         if (buff != null) {
+            buff.pin();
+            numAvailable.decrementAndGet();
          }
-         if (buff == null)
-            throw new BufferAbortException();
          return buff;
-      } catch (InterruptedException e) {
-         throw new BufferAbortException();
+      });
+   }
+
+   /**
+    * Reads a run of consecutive blocks into the pool without keeping
+    * them pinned, as {@link #pinRange(BlockId, int)} does, but only if
+    * enough buffers are available now; it never waits.
+    * 
+    * @param first the first block of the run
+    * @param count the number of blocks to read
+    * @return true if the blocks are now in the pool
+    */
+   public boolean prefetch(BlockId first, int count) {
+      Buffer[] buffs = tryToPinRange(first, count, null);
+      if (buffs == null)
+         return false;
+      for (Buffer buff : buffs)
+         unpin(buff);
+      return true;
+   }
+
+   /**
+    * Returns the blocks in the pool, other than those of
+    * temporary files, each with the number of times it has been
+    * pinned since it was read into the pool.
+    * 
+    * @return the resident blocks and their reference counts
+    */
+   public Map<BlockId, Integer> residentBlocks() {
+      Map<BlockId, Integer> result = new HashMap<>();
+      for (Stripe s : stripes) {
+         s.lock.lock();
+         try {
+            for (Map.Entry<BlockId, Buffer> e : s.pageTable.entrySet())
+               if (!FileMgr.isTemp(e.getKey().fileName()) && !s.loading.contains(e.getValue()))
+                  result.put(e.getKey(), e.getValue().references());
+         } finally {
+            s.lock.unlock();
+         }
       }
+      return result;
    }
 
    /**
-    * Returns a reserved buffer page with no associated file block.
+    * Returns true if the specified block is in the pool.
+    * Used by the replacement policy tests.
     * 
-    * @return a reserved buffer page with no associated file block.
+    * @param blk a reference to a disk block
+    * @return true if a buffer holds the block
     */
-   public synchronized Buffer reserve() {
+   boolean contains(BlockId blk) {
+      Stripe s = stripeFor(blk);
+      s.lock.lock();
       try {
-         long timestamp = System.currentTimeMillis();
-         Buffer buff = chooseUnpinnedBuffer();
-         while (buff == null && !waitingTooLong(timestamp)) {
-            wait(MAX_TIME);
-            buff = chooseUnpinnedBuffer();
-         }
-         if (buff == null) {
-            throw new BufferAbortException();
+         return s.pageTable.containsKey(blk);
+      } finally {
+         s.lock.unlock();
+      }
+   }
+
+   /**
+    * Repeats the attempt until it succeeds, waiting on the stripe's
+    * condition for a buffer to be released between attempts.
+    * The waiter is registered before the release count is read,
+    * so that a release that the attempt missed either changes
+    * the count or signals the waiter.
+    * If the attempt does not succeed within a fixed time period,
+    * then a {@link BufferAbortException} is thrown.
+    */
+   private <T> T waitFor(Stripe s, Supplier<T> attempt) {
+      T result = attempt.get();
+      if (result != null)
+         return result;
+      long start = System.nanoTime();
+      long deadline = System.currentTimeMillis() + MAX_TIME;
+      s.waiters.incrementAndGet();
+      try {
+         while (true) {
+            long seen = releases.get();
+            result = attempt.get();
+            if (result != null)
+               return result;
+            s.lock.lock();
+            try {
+               while (releases.get() == seen) {
+                  long remaining = deadline - System.currentTimeMillis();
+                  if (remaining <= 0) {
+                     stats.aborted();
+                     throw new BufferAbortException();
+                  }
+                  s.changed.await(remaining, TimeUnit.MILLISECONDS);
+               }
+            } finally {
+               s.lock.unlock();
+            }
          }
-         numAvailable--;
-         return buff;
       } catch (InterruptedException e) {
+         stats.aborted();
          throw new BufferAbortException();
+      } finally {
+         s.waiters.decrementAndGet();
+         stats.waited(System.nanoTime() - start);
       }
    }
 
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
+   /**
+    * Notes that a buffer has been released,
+    * and signals every stripe that has a waiter.
+    * Must be called while holding no stripe lock.
+    */
+   private void wakeWaiters() {
+      releases.incrementAndGet();
+      for (Stripe s : stripes) {
+         if (s.waiters.get() > 0) {
+            s.lock.lock();
+            s.changed.signalAll();
+            s.lock.unlock();
+         }
+      }
    }
 
    /**
     * Tries to pin a buffer to the specified block.
     * If there is already a buffer assigned to that block
     * then that buffer is used;
-    * otherwise, an unpinned buffer from the pool is chosen.
+    * otherwise, an unpinned buffer from the pool is chosen
+    * and the block is read into it.
     * Returns a null value if there are no available buffers.
     * 
-    * @param blk a reference to a disk block
+    * @param blk  a reference to a disk block
+    * @param ring the scan's ring of buffers, or null
     * @return the pinned buffer
     */
-   private Buffer tryToPin(BlockId blk) {
-      Buffer buff = findExistingBuffer(blk);
-      if (buff == null) {
-         buff = chooseUnpinnedBuffer();
-         if (buff == null)
+   private Buffer tryToPin(BlockId blk, BufferRing ring) {
+      Stripe s = stripeFor(blk);
+      Buffer frame = null;
+      Buffer buff;
+      boolean ours = false;
+      boolean triedRing = (ring == null);
+      s.lock.lock();
+      try {
+         while (true) {
+            buff = s.pageTable.get(blk);
+            if (buff != null) {
+               stats.hit(blk);
+               pin(s, buff);
+               awaitLoaded(s, buff);
+               break;
+            }
+            if (!triedRing) {
+               // the ring's buffer may belong to another stripe
+               triedRing = true;
+               s.lock.unlock();
+               try {
+                  frame = takeRingFrame(ring);
+               } finally {
+                  s.lock.lock();
+               }
+               continue;
+            }
+            if (frame == null)
+               frame = freeList.poll();
+            if (frame == null)
+               frame = detachVictim(s);
+            if (frame == null) {
+               // another stripe's buffer; meanwhile someone else may load the block
+               s.lock.unlock();
+               try {
+                  frame = takeFrame(s);
+               } finally {
+                  s.lock.lock();
+               }
+               if (frame == null)
+                  return null;
+               continue;
+            }
+            install(s, frame, blk);
+            stats.miss(blk);
+            if (ring != null)
+               ring.advance(frame, blk);
+            buff = frame;
+            frame = null;
+            ours = true;
+            break;
+         }
+      } finally {
+         s.lock.unlock();
+      }
+      if (frame != null) {
+         freeList.add(frame);
+         wakeWaiters();
+      }
+      if (ours) {
+         try {
+            buff.read();
+         } finally {
+            loaded(s, buff);
+         }
+      }
+      return buff;
+   }
+
+   /**
+    * Tries to pin buffers to the specified run of blocks.
+    * The blocks already in the pool are pinned first, so that
+    * they cannot be replaced; then a buffer is obtained for each
+    * missing block. If there are not enough buffers, everything is
+    * released and a null value is returned.
+    */
+   private Buffer[] tryToPinRange(BlockId first, int count, BufferRing ring) {
+      Buffer[] buffs = new Buffer[count];
+      BlockId[] blks = new BlockId[count];
+      int misses = 0;
+      for (int i = 0; i < count; i++) {
+         blks[i] = new BlockId(first.fileName(), first.number() + i);
+         buffs[i] = pinIfPresent(blks[i]);
+         if (buffs[i] == null)
+            misses++;
+      }
+
+      Buffer[] frames = new Buffer[misses];
+      int j = 0;
+      for (int i = 0; i < count; i++) {
+         if (buffs[i] != null)
+            continue;
+         Buffer frame = (ring == null) ? null : takeRingFrame(ring);
+         if (frame == null)
+            frame = takeFrame(stripeFor(first));
+         if (frame == null) {
+            for (Buffer f : frames)
+               if (f != null)
+                  freeList.add(f);
+            for (Buffer buff : buffs)
+               if (buff != null)
+                  unpin(buff);
+            wakeWaiters();
             return null;
-         buff.assignToBlock(blk);
+         }
+         if (ring != null)
+            ring.advance(frame, blks[i]);
+         frames[j++] = frame;
+      }
+
+      boolean[] ours = new boolean[count];
+      j = 0;
+      for (int i = 0; i < count; i++) {
+         if (buffs[i] != null)
+            continue;
+         Stripe s = stripeFor(blks[i]);
+         s.lock.lock();
+         try {
+            buffs[i] = s.pageTable.get(blks[i]);
+            if (buffs[i] != null) {
+               stats.hit(blks[i]);
+               pin(s, buffs[i]); // loaded by someone else in the meantime
+            } else {
+               stats.miss(blks[i]);
+               install(s, frames[j], blks[i]);
+               buffs[i] = frames[j];
+               frames[j] = null;
+               ours[i] = true;
+            }
+         } finally {
+            s.lock.unlock();
+         }
+         j++;
+      }
+      boolean spare = false;
+      for (Buffer frame : frames)
+         if (frame != null) {
+            freeList.add(frame);
+            spare = true;
+         }
+      if (spare)
+         wakeWaiters();
+
+      readMissing(buffs, blks, ours);
+      for (int i = 0; i < count; i++) {
+         if (!ours[i]) {
+            Stripe s = stripeFor(blks[i]);
+            s.lock.lock();
+            try {
+               awaitLoaded(s, buffs[i]);
+            } finally {
+               s.lock.unlock();
+            }
+         }
+      }
+      return buffs;
+   }
+
+   /**
+    * Pins the buffer holding the specified block,
+    * if the block is in the pool.
+    */
+   private Buffer pinIfPresent(BlockId blk) {
+      Stripe s = stripeFor(blk);
+      s.lock.lock();
+      try {
+         Buffer buff = s.pageTable.get(blk);
+         if (buff != null) {
+            stats.hit(blk);
+            pin(s, buff);
+         }
+         return buff;
+      } finally {
+         s.lock.unlock();
+      }
+   }
+
+   /**
+    * Reads the blocks of the newly installed buffers,
+    * one scatter read per run of consecutive missing blocks,
+    * and then marks the buffers as loaded.
+    */
+   private void readMissing(Buffer[] buffs, BlockId[] blks, boolean[] missing) {
+      int i = 0;
+      try {
+         while (i < buffs.length) {
+            if (missing[i]) {
+               int start = i;
+               while (i < buffs.length && missing[i])
+                  i++;
+               Page[] pages = new Page[i - start];
+               for (int j = start; j < i; j++)
+                  pages[j - start] = buffs[j].contents();
+               fm.readBlocks(blks[start], i - start, pages);
+            } else
+               i++;
+         }
+      } finally {
+         for (int j = 0; j < buffs.length; j++)
+            if (missing[j])
+               loaded(stripeFor(blks[j]), buffs[j]);
+      }
+   }
+
+   /**
+    * Assigns a detached buffer to the specified block of the stripe,
+    * and pins it. The stripe's lock must be held.
+    * The buffer is marked as loading; the caller must read the
+    * block into it and then call {@link #loaded}.
+    */
+   private void install(Stripe s, Buffer buff, BlockId blk) {
+      buff.assign(blk);
+      s.pageTable.put(blk, buff);
+      s.loading.add(buff);
+      s.policy.add(buff);
+      pin(s, buff);
+   }
+
+   /**
+    * Marks the buffer as loaded and wakes the threads waiting for it.
+    */
+   private void loaded(Stripe s, Buffer buff) {
+      s.lock.lock();
+      try {
+         s.loading.remove(buff);
+         s.changed.signalAll();
+      } finally {
+         s.lock.unlock();
+      }
+   }
+
+   /**
+    * Waits until the buffer, which the caller has pinned, is loaded.
+    * The stripe's lock must be held.
+    */
+   private void awaitLoaded(Stripe s, Buffer buff) {
+      try {
+         while (s.loading.contains(buff))
+            s.changed.await();
+      } catch (InterruptedException e) {
+         throw new BufferAbortException();
+      }
+   }
+
+   /**
+    * Pins the buffer, withdrawing it from replacement
+    * if it was not already pinned, and reports the reference
+    * to the replacement policy.
+    * The lock of the buffer's stripe must be held.
+    */
+   private void pin(Stripe s, Buffer buff) {
+      if (!buff.isPinned()) {
+         s.policy.pinned(buff);
+         numAvailable.decrementAndGet();
       }
-      if (!buff.isPinned())
-         numAvailable--;
       buff.pin();
+      s.policy.accessed(buff);
+   }
+
+   /**
+    * Returns a detached buffer: one from the free list if possible,
+    * and otherwise a buffer replaced in one of the stripes,
+    * starting with the specified one.
+    * The caller must hold no stripe lock.
+    * 
+    * @return the detached buffer, or null if every buffer is pinned
+    */
+   private Buffer takeFrame(Stripe start) {
+      Buffer buff = freeList.poll();
+      for (int i = 0; buff == null && i < stripes.length; i++) {
+         Stripe s = stripes[(start.id + i) % stripes.length];
+         s.lock.lock();
+         try {
+            buff = detachVictim(s);
+         } finally {
+            s.lock.unlock();
+         }
+      }
       return buff;
    }
 
-   private Buffer findExistingBuffer(BlockId blk) {
-      for (Buffer buff : bufferpool) {
-         BlockId b = buff.block();
-         if (b != null && b.equals(blk))
-            return buff;
+   /**
+    * Takes unpinned buffers out of the pool until the pending
+    * shrink is complete or no buffer is unpinned.
+    * The caller must hold no stripe lock.
+    */
+   private void retireExcess() {
+      while (excess.get() > 0) {
+         Buffer buff = takeFrame(stripes[0]);
+         if (buff == null)
+            return;
+         if (excess.getAndDecrement() <= 0) {
+            // another thread completed the shrink meanwhile
+            excess.incrementAndGet();
+            freeList.add(buff);
+            return;
+         }
+         numAvailable.decrementAndGet();
+         removeFromPool(buff);
+      }
+   }
+
+   private synchronized void removeFromPool(Buffer buff) {
+      Buffer[] newpool = new Buffer[bufferpool.length - 1];
+      int i = 0;
+      for (Buffer b : bufferpool)
+         if (b != buff)
+            newpool[i++] = b;
+      bufferpool = newpool;
+   }
+
+   /**
+    * Detaches the buffer at the ring's current position from its block,
+    * if the buffer is unpinned and still holds the block that the
+    * ring's scan read into it.
+    * The caller must hold no stripe lock.
+    *
+    * @return the detached buffer, or null if it cannot be reused
+    */
+   private Buffer takeRingFrame(BufferRing ring) {
+      Buffer buff = ring.current();
+      if (buff == null)
+         return null;
+      BlockId blk = ring.currentBlock();
+      Stripe s = stripeFor(blk);
+      s.lock.lock();
+      try {
+         if (!blk.equals(buff.block()) || buff.isPinned() || s.loading.contains(buff)
+               || s.writing.contains(buff))
+            return null;
+         s.pageTable.remove(blk);
+         s.policy.remove(buff);
+         stats.evicted(blk);
+         buff.assign(null);
+         return buff;
+      } finally {
+         s.lock.unlock();
       }
-      return null;
    }
 
-   private Buffer chooseUnpinnedBuffer() {
-      for (Buffer buff : bufferpool)
-         if (!buff.isPinned())
-            return buff;
-      return null;
+   /**
+    * Detaches the stripe's replacement victim from its block,
+    * writing its contents to disk if dirty.
+    * The write is done under the stripe's lock, so that no one
+    * can read the block from disk before it is written.
+    * A buffer that the background writer is writing is passed
+    * over, and remains a candidate.
+    * 
+    * @return the detached buffer, or null if the stripe has no victim
+    */
+   private Buffer detachVictim(Stripe s) {
+      Buffer buff = s.policy.victim();
+      if (buff != null && s.writing.contains(buff)) {
+         List<Buffer> passed = new ArrayList<>();
+         while (buff != null && s.writing.contains(buff)) {
+            passed.add(buff);
+            buff = s.policy.victim();
+         }
+         for (Buffer b : passed)
+            s.policy.unpinned(b);
+      }
+      if (buff != null) {
+         s.pageTable.remove(buff.block());
+         s.policy.remove(buff);
+         stats.evicted(buff.block());
+         buff.assign(null);
+      }
+      return buff;
+   }
+
+   private Stripe stripeFor(BlockId blk) {
+      return stripes[Math.floorMod(blk.hashCode(), stripes.length)];
+   }
+
+   private static int defaultStripes(int numbuffs) {
+      int cpus = Runtime.getRuntime().availableProcessors();
+      return Math.max(1, Math.min(cpus, numbuffs / 8));
+   }
+
+   /**
+    * A partition of the pool.
+    * Its fields, other than waiters, are guarded by its lock.
+    */
+   private static class Stripe {
+      int id;
+      ReentrantLock lock = new ReentrantLock();
+      Condition changed = lock.newCondition();
+      Map<BlockId, Buffer> pageTable = new HashMap<>();
+      Set<Buffer> loading = new HashSet<>();
+      Set<Buffer> writing = new HashSet<>();
+      ReplacementPolicy policy;
+      // the number of threads waiting on this stripe for a buffer
+      AtomicInteger waiters = new AtomicInteger();
+
+      Stripe(int id, ReplacementPolicy policy) {
+         this.id = id;
+         this.policy = policy;
+      }
    }
 }
@@ -0,0 +1,145 @@
+package simpledb.buffer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import simpledb.file.BlockId;
+import simpledb.file.FileMgr;
+
+/**
+ * Saves the set of blocks in the buffer pool to a file,
+ * so that the pool can be prewarmed when the database restarts.
+ * The file has one line per block, giving its file name,
+ * block number and reference count.
+ * <p>
+ * Prewarming reads the most referenced blocks, as many as
+ * there are available buffers, in a background thread.
+ * They are read in file and block order, with one scatter read
+ * per run of consecutive blocks, so that the disk sees
+ * mostly sequential reads.
+ */
+public class BufferPoolDump {
+   public static final String FILENAME = "bufferpool.dump";
+   private static final int MAX_RUN = 8;
+
+   private BufferMgr bm;
+   private FileMgr fm;
+   private File dbDirectory;
+   private File dumpfile;
+
+   /**
+    * Creates an object that saves and restores the contents
+    * of the specified pool, using a file in the database directory.
+    *
+    * @param bm          the buffer manager
+    * @param fm          the file manager
+    * @param dbDirectory the database directory
+    */
+   public BufferPoolDump(BufferMgr bm, FileMgr fm, File dbDirectory) {
+      this.bm = bm;
+      this.fm = fm;
+      this.dbDirectory = dbDirectory;
+      this.dumpfile = new File(dbDirectory, FILENAME);
+   }
+
+   /**
+    * Writes the blocks now in the pool to the dump file.
+    * The file is written under another name and then renamed,
+    * so that a crash cannot leave a partial dump.
+    */
+   public void save() {
+      File tmp = new File(dbDirectory, FILENAME + ".new");
+      try (PrintWriter out = new PrintWriter(tmp)) {
+         for (Map.Entry<BlockId, Integer> e : bm.residentBlocks().entrySet()) {
+            BlockId blk = e.getKey();
+            out.println(blk.fileName() + " " + blk.number() + " " + e.getValue());
+         }
+      } catch (IOException e) {
+         throw new RuntimeException("cannot save buffer pool to " + tmp);
+      }
+      try {
+         Files.move(tmp.toPath(), dumpfile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+         throw new RuntimeException("cannot save buffer pool to " + dumpfile);
+      }
+   }
+
+   /**
+    * Starts a background thread that reads the blocks of the dump
+    * file into the pool. Has no effect if there is no dump file.
+    *
+    * @return the thread, or null if there is nothing to read
+    */
+   public Thread prewarm() {
+      if (!dumpfile.exists())
+         return null;
+      Thread t = new Thread(this::load, "buffer prewarm");
+      t.setDaemon(true);
+      t.start();
+      return t;
+   }
+
+   /**
+    * Reads the blocks of the dump file into the pool, stopping
+    * when no buffer is available.
+    * Blocks of files that no longer exist, or that lie beyond
+    * the end of their file, are skipped.
+    * The dump is only a hint, so a damaged one is ignored.
+    */
+   void load() {
+      List<Entry> entries = new ArrayList<>();
+      try (BufferedReader in = new BufferedReader(new FileReader(dumpfile))) {
+         String line;
+         while ((line = in.readLine()) != null) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length != 3)
+               return;
+            BlockId blk = new BlockId(fields[0], Integer.parseInt(fields[1]));
+            entries.add(new Entry(blk, Integer.parseInt(fields[2])));
+         }
+      } catch (IOException | NumberFormatException e) {
+         return;
+      }
+      entries.removeIf(e -> !new File(dbDirectory, e.blk.fileName()).exists()
+            || e.blk.number() >= fm.length(e.blk.fileName()));
+
+      entries.sort(Comparator.comparingInt((Entry e) -> e.refs).reversed());
+      int limit = Math.min(entries.size(), bm.available());
+      entries = new ArrayList<>(entries.subList(0, limit));
+      entries.sort(Comparator.comparing((Entry e) -> e.blk.fileName())
+            .thenComparingInt(e -> e.blk.number()));
+
+      int i = 0;
+      while (i < entries.size()) {
+         BlockId first = entries.get(i).blk;
+         int count = 1;
+         while (i + count < entries.size() && count < MAX_RUN
+               && entries.get(i + count).blk.fileName().equals(first.fileName())
+               && entries.get(i + count).blk.number() == first.number() + count)
+            count++;
+         if (!bm.prefetch(first, count))
+            return;
+         i += count;
+      }
+   }
+
+   private static class Entry {
+      BlockId blk;
+      int refs;
+
+      Entry(BlockId blk, int refs) {
+         this.blk = blk;
+         this.refs = refs;
+      }
+   }
+}
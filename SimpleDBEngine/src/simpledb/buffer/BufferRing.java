@@ -0,0 +1,74 @@
+package simpledb.buffer;
+
+import simpledb.file.BlockId;
+
+/**
+ * A bounded ring of buffers through which a scan reads its blocks,
+ * for scans that touch many blocks once, such as a scan of a table
+ * larger than the pool, or the writing and merging of sorted runs.
+ * When the scan pins a block that is not in the pool, the buffer manager
+ * reuses the buffer at the ring's current position, provided that it
+ * is unpinned and still holds the block the scan read into it;
+ * otherwise a buffer is replaced as usual and takes that position.
+ * The scan therefore occupies at most a ring's worth of buffers,
+ * rather than cycling through the whole pool and replacing
+ * the pages that other transactions keep using.
+ * A block already in the pool is pinned as usual, without using the ring.
+ * <p>
+ * A ring belongs to a single scan, and is not thread-safe.
+ */
+public class BufferRing {
+   /**
+    * The ring size used by the scans of the planner.
+    * A scan holds one block at a time; the extra positions let
+    * the buffer writer write dirty blocks before they are reused.
+    */
+   public static final int DEFAULT_SIZE = 4;
+
+   private Buffer[] buffs;
+   private BlockId[] blks;
+   private int current = 0;
+
+   /**
+    * Creates an empty ring of the default size.
+    */
+   public BufferRing() {
+      this(DEFAULT_SIZE);
+   }
+
+   /**
+    * Creates an empty ring having the specified number of positions.
+    * 
+    * @param size the number of buffers in the ring
+    */
+   public BufferRing(int size) {
+      buffs = new Buffer[size];
+      blks = new BlockId[size];
+   }
+
+   /**
+    * Returns the buffer at the current position, or null if the
+    * position has not yet been filled.
+    */
+   Buffer current() {
+      return buffs[current];
+   }
+
+   /**
+    * Returns the block that the scan read into the buffer
+    * at the current position.
+    */
+   BlockId currentBlock() {
+      return blks[current];
+   }
+
+   /**
+    * Puts the specified buffer, which now holds the specified block,
+    * at the current position, and moves to the next position.
+    */
+   void advance(Buffer buff, BlockId blk) {
+      buffs[current] = buff;
+      blks[current] = blk;
+      current = (current + 1) % buffs.length;
+   }
+}
@@ -0,0 +1,164 @@
+package simpledb.buffer;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import simpledb.file.BlockId;
+
+/**
+ * The statistics of a buffer pool, counted from its creation.
+ * The counters are striped (LongAdder), so that counting
+ * adds no contention to pinning.
+ * The counts are also kept per file, except that the temporary
+ * files, which come and go, are counted together as "temp*".
+ * The statistics are published over JMX by {@link simpledb.server.SimpleDB}.
+ */
+public class BufferStats implements BufferStatsMXBean {
+   static final String TEMP_FILES = "temp*";
+
+   private BufferMgr bm;
+   private FileStats totals = new FileStats();
+   private Map<String, FileStats> files = new ConcurrentHashMap<>();
+   private LongAdder pinWaits = new LongAdder();
+   private LongAdder pinWaitNanos = new LongAdder();
+   private LongAdder aborts = new LongAdder();
+
+   BufferStats(BufferMgr bm) {
+      this.bm = bm;
+   }
+
+   /**
+    * Returns the number of pins that found their block in the pool.
+    */
+   public long getHits() {
+      return totals.getHits();
+   }
+
+   /**
+    * Returns the number of pins that had to read their block
+    * (or, for a pinned range, the number of blocks read).
+    */
+   public long getMisses() {
+      return totals.getMisses();
+   }
+
+   /**
+    * Returns the fraction of pins that found their block in the pool.
+    */
+   public double getHitRatio() {
+      long hits = getHits();
+      long total = hits + getMisses();
+      return (total == 0) ? 0 : (double) hits / total;
+   }
+
+   /**
+    * Returns the number of times a block was replaced by another.
+    */
+   public long getEvictions() {
+      return totals.getEvictions();
+   }
+
+   /**
+    * Returns the number of modified blocks written to disk,
+    * whether on replacement, at commit, or by the background writer.
+    */
+   public long getDirtyWrites() {
+      return totals.getDirtyWrites();
+   }
+
+   /**
+    * Returns the number of pins (and reservations) that had to wait
+    * for a buffer to become available.
+    */
+   public long getPinWaits() {
+      return pinWaits.sum();
+   }
+
+   /**
+    * Returns the total time spent waiting for buffers, in milliseconds.
+    */
+   public long getPinWaitMillis() {
+      return pinWaitNanos.sum() / 1_000_000;
+   }
+
+   /**
+    * Returns the number of times that no buffer became available
+    * in time, so that a {@link BufferAbortException} was thrown.
+    */
+   public long getAborts() {
+      return aborts.sum();
+   }
+
+   public int getAvailable() {
+      return bm.available();
+   }
+
+   public int getBufferCount() {
+      return bm.size();
+   }
+
+   /**
+    * Resizes the pool, as {@link BufferMgr#resize(int)} does.
+    * This is the pool's administrative interface over JMX.
+    */
+   public void setBufferCount(int numbuffs) {
+      bm.resize(numbuffs);
+   }
+
+   /**
+    * Returns the statistics of each file, sorted by file name.
+    */
+   public Map<String, FileStats> getFileStats() {
+      return new TreeMap<>(files);
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("hits=%d misses=%d (hit ratio %.3f) evictions=%d writes=%d"
+            + " waits=%d (%d ms) aborts=%d", getHits(), getMisses(), getHitRatio(),
+            getEvictions(), getDirtyWrites(), getPinWaits(), getPinWaitMillis(), getAborts()));
+      for (Map.Entry<String, FileStats> e : getFileStats().entrySet())
+         sb.append("\n   " + e.getKey() + ": " + e.getValue());
+      return sb.toString();
+   }
+
+   void hit(BlockId blk) {
+      totals.hits.increment();
+      forFile(blk).hits.increment();
+   }
+
+   void miss(BlockId blk) {
+      totals.misses.increment();
+      forFile(blk).misses.increment();
+   }
+
+   void evicted(BlockId blk) {
+      totals.evictions.increment();
+      forFile(blk).evictions.increment();
+   }
+
+   void written(BlockId blk) {
+      totals.dirtyWrites.increment();
+      forFile(blk).dirtyWrites.increment();
+   }
+
+   void waited(long nanos) {
+      pinWaits.increment();
+      pinWaitNanos.add(nanos);
+   }
+
+   void aborted() {
+      aborts.increment();
+   }
+
+   private FileStats forFile(BlockId blk) {
+      String filename = blk.fileName();
+      String key = filename.startsWith("temp") ? TEMP_FILES : filename;
+      FileStats fs = files.get(key);
+      if (fs == null)
+         fs = files.computeIfAbsent(key, k -> new FileStats());
+      return fs;
+   }
+}
@@ -0,0 +1,35 @@
+package simpledb.buffer;
+
+import java.util.Map;
+
+/**
+ * The management interface through which the statistics
+ * of a buffer pool are published over JMX.
+ * See {@link BufferStats} for the meaning of each attribute.
+ * The BufferCount attribute is writable: setting it resizes the pool.
+ */
+public interface BufferStatsMXBean {
+   long getHits();
+
+   long getMisses();
+
+   double getHitRatio();
+
+   long getEvictions();
+
+   long getDirtyWrites();
+
+   long getPinWaits();
+
+   long getPinWaitMillis();
+
+   long getAborts();
+
+   int getAvailable();
+
+   int getBufferCount();
+
+   void setBufferCount(int numbuffs);
+
+   Map<String, FileStats> getFileStats();
+}
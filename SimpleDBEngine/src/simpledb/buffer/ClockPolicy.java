@@ -0,0 +1,82 @@
+package simpledb.buffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The clock (second-chance) approximation of LRU.
+ * The buffers form a ring, each with a reference bit
+ * that is set whenever the buffer is pinned.
+ * To choose a victim, a hand sweeps the ring, clearing
+ * the reference bits of the candidates it passes, and stops
+ * at the first candidate whose bit is already clear.
+ * Unlike LRU, a reference costs no list manipulation.
+ * The slot of a removed buffer is reused by the next buffer added.
+ */
+class ClockPolicy implements ReplacementPolicy {
+   private List<Frame> ring = new ArrayList<>();
+   private Map<Buffer, Frame> frames = new HashMap<>();
+   private Deque<Frame> emptySlots = new ArrayDeque<>();
+   private int hand = 0;
+
+   public void add(Buffer buff) {
+      Frame f = emptySlots.poll();
+      if (f == null) {
+         f = new Frame();
+         ring.add(f);
+      }
+      f.buff = buff;
+      f.referenced = false;
+      f.candidate = false;
+      frames.put(buff, f);
+   }
+
+   public void remove(Buffer buff) {
+      Frame f = frames.remove(buff);
+      if (f != null) {
+         f.buff = null;
+         f.candidate = false;
+         emptySlots.add(f);
+      }
+   }
+
+   public void accessed(Buffer buff) {
+      frames.get(buff).referenced = true;
+   }
+
+   public void unpinned(Buffer buff) {
+      frames.get(buff).candidate = true;
+   }
+
+   public void pinned(Buffer buff) {
+      Frame f = frames.get(buff);
+      if (f != null)
+         f.candidate = false;
+   }
+
+   public Buffer victim() {
+      // two sweeps suffice: the first clears every candidate's bit
+      for (int i = 0; i < 2 * ring.size(); i++) {
+         Frame f = ring.get(hand);
+         hand = (hand + 1) % ring.size();
+         if (!f.candidate)
+            continue;
+         if (f.referenced)
+            f.referenced = false;
+         else {
+            f.candidate = false;
+            return f.buff;
+         }
+      }
+      return null;
+   }
+
+   private static class Frame {
+      Buffer buff;
+      boolean referenced, candidate;
+   }
+}
@@ -0,0 +1,47 @@
+package simpledb.buffer;
+
+/**
+ * A background thread that periodically writes dirty, unpinned
+ * buffers to disk, so that a buffer chosen for replacement is
+ * usually clean and a pin that misses does not have to wait
+ * for a log flush and a data write before it can read its block.
+ * The writing itself is done by {@link BufferMgr#writeDirty(int)},
+ * which respects the write-ahead rule.
+ */
+class DirtyPageWriter implements Runnable {
+   private BufferMgr bm;
+   private long interval;
+   private int maxWrites;
+   private volatile boolean stopped = false;
+
+   /**
+    * Creates a writer for the specified buffer manager.
+    *
+    * @param bm        the buffer manager
+    * @param interval  the number of milliseconds between rounds
+    * @param maxWrites the maximum number of buffers written per round
+    */
+   DirtyPageWriter(BufferMgr bm, long interval, int maxWrites) {
+      this.bm = bm;
+      this.interval = interval;
+      this.maxWrites = maxWrites;
+   }
+
+   public void run() {
+      while (!stopped) {
+         try {
+            Thread.sleep(interval);
+            bm.writeDirty(maxWrites);
+         } catch (InterruptedException e) {
+            // stop() was called
+         } catch (RuntimeException e) {
+            // a failed write is retried in the next round,
+            // or else reported to whoever replaces the buffer
+         }
+      }
+   }
+
+   void stop() {
+      stopped = true;
+   }
+}
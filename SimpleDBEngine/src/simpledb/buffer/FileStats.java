@@ -0,0 +1,48 @@
+package simpledb.buffer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The buffer pool statistics of one file, or of a group of files.
+ */
+public class FileStats {
+   LongAdder hits = new LongAdder();
+   LongAdder misses = new LongAdder();
+   LongAdder evictions = new LongAdder();
+   LongAdder dirtyWrites = new LongAdder();
+
+   /**
+    * Returns the number of pins that found the block in the pool.
+    */
+   public long getHits() {
+      return hits.sum();
+   }
+
+   /**
+    * Returns the number of pins that had to read the block.
+    */
+   public long getMisses() {
+      return misses.sum();
+   }
+
+   /**
+    * Returns the number of times a block of the file
+    * was replaced by another block.
+    */
+   public long getEvictions() {
+      return evictions.sum();
+   }
+
+   /**
+    * Returns the number of times a modified block of the file
+    * was written to disk by the buffer pool.
+    */
+   public long getDirtyWrites() {
+      return dirtyWrites.sum();
+   }
+
+   public String toString() {
+      return "hits=" + getHits() + " misses=" + getMisses()
+            + " evictions=" + getEvictions() + " writes=" + getDirtyWrites();
+   }
+}
@@ -0,0 +1,104 @@
+package simpledb.buffer;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import simpledb.file.BlockId;
+
+/**
+ * The LRU-K policy of O'Neil, O'Neil and Weikum.
+ * The victim is the candidate whose K-th most recent reference
+ * is the oldest; blocks referenced fewer than K times
+ * are replaced first, least recently used first.
+ * A block read once by a scan therefore cannot displace
+ * a block, such as a catalog page or an index root,
+ * that is referenced repeatedly.
+ * The reference history of a block is retained after the block
+ * leaves the pool, for a bounded number of blocks, so that a block
+ * that is re-read soon afterwards is recognized as hot.
+ */
+class LRUKPolicy implements ReplacementPolicy {
+   private int k;
+   private long clock = 0;
+   private long seq = 0;
+   private Map<BlockId, long[]> history;
+   // candidates, ordered by their priority when they were unpinned
+   private TreeSet<Entry> candidates = new TreeSet<>(
+         Comparator.comparingLong((Entry e) -> e.kth).thenComparingLong(e -> e.last)
+               .thenComparingLong(e -> e.seq));
+   private Map<Buffer, Entry> entries = new HashMap<>();
+
+   /**
+    * Creates an LRU-K policy.
+    *
+    * @param k         the number of references of a block to remember
+    * @param retained  the number of blocks whose history is remembered
+    */
+   LRUKPolicy(int k, int retained) {
+      this.k = k;
+      history = new LinkedHashMap<>(16, 0.75f, true) {
+         protected boolean removeEldestEntry(Map.Entry<BlockId, long[]> eldest) {
+            return size() > retained;
+         }
+      };
+   }
+
+   public void add(Buffer buff) {
+   }
+
+   public void remove(Buffer buff) {
+      pinned(buff);
+   }
+
+   /**
+    * Shifts the reference into the block's history, in which
+    * element 0 is the most recent reference and element k-1 the K-th.
+    */
+   public void accessed(Buffer buff) {
+      long[] refs = history.computeIfAbsent(buff.block(), b -> new long[k]);
+      System.arraycopy(refs, 0, refs, 1, k - 1);
+      refs[0] = ++clock;
+   }
+
+   public void unpinned(Buffer buff) {
+      long[] refs = history.getOrDefault(buff.block(), new long[k]);
+      Entry e = new Entry(buff, refs[k - 1], refs[0], ++seq);
+      entries.put(buff, e);
+      candidates.add(e);
+   }
+
+   public void pinned(Buffer buff) {
+      Entry e = entries.remove(buff);
+      if (e != null)
+         candidates.remove(e);
+   }
+
+   public Buffer victim() {
+      Entry e = candidates.pollFirst();
+      if (e == null)
+         return null;
+      entries.remove(e.buff);
+      return e.buff;
+   }
+
+   /**
+    * A candidate, with its K-th most recent and most recent
+    * reference times (0 if there were fewer than K references),
+    * and a sequence number that keeps entries distinct
+    * when a block's history has been forgotten.
+    */
+   private static class Entry {
+      Buffer buff;
+      long kth, last, seq;
+
+      Entry(Buffer buff, long kth, long last, long seq) {
+         this.buff = buff;
+         this.kth = kth;
+         this.last = last;
+         this.seq = seq;
+      }
+   }
+}
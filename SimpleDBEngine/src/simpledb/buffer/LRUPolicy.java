@@ -0,0 +1,41 @@
+package simpledb.buffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Replaces the buffer that has been unpinned the longest.
+ * Since a buffer's block can only be referenced while the buffer
+ * is pinned, this is least-recently-used replacement.
+ */
+class LRUPolicy implements ReplacementPolicy {
+   private Set<Buffer> candidates = new LinkedHashSet<>();
+
+   public void add(Buffer buff) {
+   }
+
+   public void remove(Buffer buff) {
+      candidates.remove(buff);
+   }
+
+   public void accessed(Buffer buff) {
+   }
+
+   public void unpinned(Buffer buff) {
+      candidates.add(buff);
+   }
+
+   public void pinned(Buffer buff) {
+      candidates.remove(buff);
+   }
+
+   public Buffer victim() {
+      Iterator<Buffer> iter = candidates.iterator();
+      if (!iter.hasNext())
+         return null;
+      Buffer buff = iter.next();
+      iter.remove();
+      return buff;
+   }
+}
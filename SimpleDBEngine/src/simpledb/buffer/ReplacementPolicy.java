@@ -0,0 +1,67 @@
+package simpledb.buffer;
+
+/**
+ * The strategy by which the buffer manager chooses
+ * which unpinned buffer to replace.
+ * A policy only sees the buffers that hold a block;
+ * the buffer manager keeps the buffers that hold no block
+ * on a free list of its own, and uses those first.
+ * Each stripe of the buffer manager has its own policy, which sees
+ * only the buffers holding that stripe's blocks; a buffer is added
+ * when it is assigned a block of the stripe, and removed when
+ * it is detached from that block.
+ * The buffer manager calls these methods while holding the
+ * stripe's lock, so a policy need not be thread-safe.
+ */
+public interface ReplacementPolicy {
+   /**
+    * Adds a buffer to the set of buffers managed by the policy.
+    * Called when the buffer is assigned a block,
+    * before the buffer is first pinned.
+    *
+    * @param buff the buffer
+    */
+   void add(Buffer buff);
+
+   /**
+    * Removes a buffer from the set of buffers managed by the policy.
+    * Called when the buffer is detached from its block, which is
+    * usually just after the policy has chosen it as the victim.
+    *
+    * @param buff the buffer
+    */
+   void remove(Buffer buff);
+
+   /**
+    * Records a reference to the block held by the buffer.
+    * Called each time the buffer is pinned.
+    *
+    * @param buff the buffer being pinned
+    */
+   void accessed(Buffer buff);
+
+   /**
+    * Notes that the buffer's pin count has gone to zero,
+    * so that it has become a candidate for replacement.
+    *
+    * @param buff the unpinned buffer
+    */
+   void unpinned(Buffer buff);
+
+   /**
+    * Notes that a candidate buffer has been pinned again,
+    * so that it is no longer a candidate for replacement.
+    * Has no effect if the buffer was not a candidate.
+    *
+    * @param buff the pinned buffer
+    */
+   void pinned(Buffer buff);
+
+   /**
+    * Chooses a candidate buffer to be replaced, and
+    * removes it from the candidates.
+    *
+    * @return the chosen buffer, or null if there are no candidates
+    */
+   Buffer victim();
+}
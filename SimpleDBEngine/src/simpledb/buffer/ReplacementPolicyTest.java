@@ -0,0 +1,102 @@
+package simpledb.buffer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import simpledb.file.BlockId;
+import simpledb.server.SimpleDB;
+
+/**
+ * Replays page-reference traces against a buffer pool under
+ * each replacement policy, and reports the hit ratio of each.
+ * A trace may be given as a file argument, one reference per line
+ * in the form "filename blknum"; otherwise two synthetic traces are used.
+ */
+public class ReplacementPolicyTest {
+   private static final int POOL_SIZE = 16;
+
+   public static void main(String[] args) throws IOException {
+      SimpleDB db = new SimpleDB("replacementtest", 400, POOL_SIZE);
+      if (args.length > 0)
+         replay(db, args[0], readTrace(args[0]));
+      else {
+         replay(db, "hot blocks during scans", hotAndScan(new Random(1)));
+         replay(db, "skewed random", skewed(new Random(2)));
+      }
+   }
+
+   private static void replay(SimpleDB db, String name, List<BlockId> trace) {
+      System.out.println("Trace: " + name + " (" + trace.size() + " references, "
+            + POOL_SIZE + " buffers)");
+      for (ReplacementStrategy strategy : ReplacementStrategy.values()) {
+         BufferMgr bm = new BufferMgr(db.fileMgr(), db.logMgr(), POOL_SIZE, strategy, 1);
+         int hits = 0;
+         for (BlockId blk : trace) {
+            if (bm.contains(blk))
+               hits++;
+            bm.unpin(bm.pin(blk));
+         }
+         System.out.printf("   %-6s hit ratio %.3f%n", strategy, (double) hits / trace.size());
+      }
+   }
+
+   /**
+    * A small set of hot blocks (think catalog pages and index roots),
+    * each referenced every 60 or so references,
+    * interleaved with repeated sequential scans of a table
+    * much larger than the pool.
+    */
+   private static List<BlockId> hotAndScan(Random rand) {
+      List<BlockId> trace = new ArrayList<>();
+      int scanpos = 0;
+      for (int i = 0; i < 20000; i++) {
+         if (rand.nextInt(5) == 0)
+            trace.add(new BlockId("hotfile", rand.nextInt(12)));
+         else {
+            trace.add(new BlockId("scanfile", scanpos));
+            scanpos = (scanpos + 1) % 100;
+         }
+      }
+      return trace;
+   }
+
+   /**
+    * Random references to 200 blocks, where block n
+    * is referenced with probability proportional to 1/(n+1).
+    */
+   private static List<BlockId> skewed(Random rand) {
+      int n = 200;
+      double[] cumulative = new double[n];
+      double total = 0;
+      for (int i = 0; i < n; i++) {
+         total += 1.0 / (i + 1);
+         cumulative[i] = total;
+      }
+      List<BlockId> trace = new ArrayList<>();
+      for (int i = 0; i < 20000; i++) {
+         double r = rand.nextDouble() * total;
+         int blknum = 0;
+         while (cumulative[blknum] < r)
+            blknum++;
+         trace.add(new BlockId("datafile", blknum));
+      }
+      return trace;
+   }
+
+   private static List<BlockId> readTrace(String filename) throws IOException {
+      List<BlockId> trace = new ArrayList<>();
+      try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+         String line;
+         while ((line = reader.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length == 2)
+               trace.add(new BlockId(tokens[0], Integer.parseInt(tokens[1])));
+         }
+      }
+      return trace;
+   }
+}
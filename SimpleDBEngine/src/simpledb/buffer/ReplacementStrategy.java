@@ -0,0 +1,45 @@
+package simpledb.buffer;
+
+/**
+ * The buffer replacement policies that the system provides.
+ * Each buffer manager creates its own policy object.
+ */
+public enum ReplacementStrategy {
+   /**
+    * Replace the buffer that was unpinned the longest ago.
+    */
+   LRU,
+   /**
+    * The clock (second-chance) approximation of LRU.
+    */
+   CLOCK,
+   /**
+    * LRU-2: replace the buffer whose block's second most recent
+    * reference is the oldest.
+    */
+   LRU_K,
+   /**
+    * The 2Q policy, which keeps blocks referenced only once
+    * from displacing blocks that are referenced repeatedly.
+    */
+   TWO_Q;
+
+   /**
+    * Creates a policy of this kind for a pool of the specified size.
+    * 
+    * @param numbuffs the number of buffers in the pool
+    * @return a new replacement policy
+    */
+   public ReplacementPolicy newPolicy(int numbuffs) {
+      switch (this) {
+         case CLOCK:
+            return new ClockPolicy();
+         case LRU_K:
+            return new LRUKPolicy(2, 4 * numbuffs);
+         case TWO_Q:
+            return new TwoQueuePolicy(Math.max(1, numbuffs / 4), Math.max(1, numbuffs / 2));
+         default:
+            return new LRUPolicy();
+      }
+   }
+}
@@ -0,0 +1,103 @@
+package simpledb.buffer;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import simpledb.file.BlockId;
+
+/**
+ * The 2Q policy of Johnson and Shasha.
+ * A block read into the pool for the first time enters
+ * a FIFO queue (A1in); if it is referenced again after leaving that queue,
+ * while its id is still remembered in a queue of recently replaced
+ * blocks (A1out), it is read into an LRU queue (Am) instead.
+ * Victims are taken from A1in while that queue is over its target size,
+ * and from Am otherwise, so blocks that are referenced only once,
+ * such as those of a scan, pass through the pool without
+ * displacing the blocks in Am.
+ */
+class TwoQueuePolicy implements ReplacementPolicy {
+   private int inTarget, outSize;
+   // the buffers of each resident queue, oldest (or least recently used) first
+   private Set<Buffer> a1in = new LinkedHashSet<>();
+   private Set<Buffer> am = new LinkedHashSet<>();
+   private Set<BlockId> a1out = new LinkedHashSet<>();
+   private Set<Buffer> candidates = new HashSet<>();
+
+   /**
+    * Creates a 2Q policy.
+    *
+    * @param inTarget the target size of the A1in queue
+    * @param outSize  the number of replaced blocks remembered in A1out
+    */
+   TwoQueuePolicy(int inTarget, int outSize) {
+      this.inTarget = inTarget;
+      this.outSize = outSize;
+   }
+
+   public void add(Buffer buff) {
+   }
+
+   /**
+    * Removes the buffer from whichever queue holds it.
+    * A buffer that has just been chosen as the victim
+    * will already have been removed.
+    */
+   public void remove(Buffer buff) {
+      a1in.remove(buff);
+      am.remove(buff);
+      candidates.remove(buff);
+   }
+
+   /**
+    * Places a newly assigned buffer on its queue;
+    * a buffer already on Am becomes its most recently used.
+    * A reference to a block on A1in does not move it.
+    */
+   public void accessed(Buffer buff) {
+      if (am.remove(buff))
+         am.add(buff);
+      else if (!a1in.contains(buff)) {
+         if (a1out.remove(buff.block()))
+            am.add(buff);
+         else
+            a1in.add(buff);
+      }
+   }
+
+   public void unpinned(Buffer buff) {
+      candidates.add(buff);
+   }
+
+   public void pinned(Buffer buff) {
+      candidates.remove(buff);
+   }
+
+   public Buffer victim() {
+      Buffer buff = null;
+      if (a1in.size() > inTarget)
+         buff = oldestCandidate(a1in);
+      if (buff == null)
+         buff = oldestCandidate(am);
+      if (buff == null)
+         buff = oldestCandidate(a1in);
+      if (buff == null)
+         return null;
+      candidates.remove(buff);
+      if (a1in.remove(buff)) {
+         a1out.add(buff.block());
+         if (a1out.size() > outSize)
+            a1out.remove(a1out.iterator().next());
+      } else
+         am.remove(buff);
+      return buff;
+   }
+
+   private Buffer oldestCandidate(Set<Buffer> queue) {
+      for (Buffer buff : queue)
+         if (candidates.contains(buff))
+            return buff;
+      return null;
+   }
+}
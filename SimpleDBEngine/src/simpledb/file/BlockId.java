@@ -27,6 +27,8 @@ public class BlockId {
    }
 
    public int hashCode() {
-      return toString().hashCode();
+      // avoids building the toString() value, since blocks are hashed on every
+      // lock request (including each Transaction.size call)
+      return 31 * filename.hashCode() + blknum;
    }
 }
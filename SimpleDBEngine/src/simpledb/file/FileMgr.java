@@ -3,18 +3,43 @@ package simpledb.file;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.util.HashMap;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FileMgr {
+   // the number of blocks by which a file grows when its preallocated blocks run out
+   private static final int EXTENT_SIZE = 16;
+   // present in the database directory while a file manager has it open
+   private static final String OPEN_MARKER = "filemgr.open";
+
    private File dbDirectory;
    private int blocksize;
    private boolean isNew;
-   private Map<String, RandomAccessFile> openFiles = new HashMap<>();
+   // true if the previous file manager was not closed
+   private boolean unclean;
+   private StorageMode mode;
+   private SyncPolicy policy;
+   private Map<String, FileChannel> openFiles = new ConcurrentHashMap<>();
+   private Map<String, MappedFile> mappedFiles = new ConcurrentHashMap<>();
+   // the logical and the allocated (physical) number of blocks of each open file
+   private Map<String, Integer> lengths = new ConcurrentHashMap<>();
+   private Map<String, Integer> allocated = new ConcurrentHashMap<>();
+   // the files written since they were last forced (GROUP policy only)
+   private Set<String> unsynced = ConcurrentHashMap.newKeySet();
 
    public FileMgr(File dbDirectory, int blocksize) {
+      this(dbDirectory, blocksize, StorageMode.CHANNEL, SyncPolicy.ALWAYS);
+   }
+
+   public FileMgr(File dbDirectory, int blocksize, StorageMode mode, SyncPolicy policy) {
       this.dbDirectory = dbDirectory;
       this.blocksize = blocksize;
+      this.mode = mode;
+      this.policy = policy;
       isNew = !dbDirectory.exists();
 
       // create the directory if the database is new
@@ -23,53 +48,232 @@ public class FileMgr {
 
       // remove any leftover temporary tables
       for (String filename : dbDirectory.list())
-         if (filename.startsWith("temp"))
+         if (isTemp(filename))
             new File(dbDirectory, filename).delete();
+
+      File marker = new File(dbDirectory, OPEN_MARKER);
+      unclean = marker.exists();
+      try {
+         marker.createNewFile();
+      } catch (IOException e) {
+         throw new UncheckedIOException("cannot create " + marker, e);
+      }
+   }
+
+   /**
+    * Reads the specified block into the page.
+    * The read is positional, so it neither moves nor depends on
+    * the channel's file pointer, and concurrent reads of
+    * different blocks (or files) do not serialize on the file manager.
+    * In mapped mode the page instead becomes a view onto the
+    * mapped block, unless the block is not yet mapped.
+    */
+   public void read(BlockId blk, Page p) {
+      try {
+         if (mode == StorageMode.MAPPED) {
+            MappedFile mf = getMappedFile(blk.fileName());
+            ByteBuffer region = mf.region(blk.number(), allocated.get(blk.fileName()));
+            if (region != null) {
+               p.view(region);
+               return;
+            }
+         }
+         FileChannel fc = getFile(blk.fileName());
+         ByteBuffer bb = p.ownContents();
+         long pos = position(blk);
+         while (bb.hasRemaining()) {
+            if (fc.read(bb, pos + bb.position()) < 0)
+               break; // the block lies (partly) beyond the end of the file
+         }
+      } catch (IOException e) {
+         throw new UncheckedIOException("cannot read block " + blk, e);
+      }
    }
 
-   public synchronized void read(BlockId blk, Page p) {
+   /**
+    * Reads a run of consecutive blocks, starting at the specified block,
+    * into the specified pages with a single scatter read.
+    * In mapped mode each page simply becomes a view onto its block.
+    * 
+    * @param first   the first block of the run
+    * @param count   the number of blocks to read
+    * @param targets the pages to read the blocks into, in block order
+    */
+   public void readBlocks(BlockId first, int count, Page[] targets) {
+      if (mode == StorageMode.MAPPED) {
+         for (int i = 0; i < count; i++)
+            read(new BlockId(first.fileName(), first.number() + i), targets[i]);
+         return;
+      }
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().read(p.contents());
+         FileChannel fc = getFile(first.fileName());
+         ByteBuffer[] bbs = new ByteBuffer[count];
+         for (int i = 0; i < count; i++)
+            bbs[i] = targets[i].ownContents();
+         // a scatter read uses the channel's position, which only this method relies on
+         synchronized (fc) {
+            fc.position(position(first));
+            while (bbs[count - 1].hasRemaining()) {
+               if (fc.read(bbs) < 0)
+                  break; // the run extends beyond the end of the file
+            }
+         }
       } catch (IOException e) {
-         throw new RuntimeException("cannot read block " + blk);
+         throw new UncheckedIOException("cannot read " + count + " blocks from " + first, e);
       }
    }
 
-   public synchronized void write(BlockId blk, Page p) {
+   /**
+    * Writes the page to the specified block, using a positional write.
+    */
+   public void write(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().write(p.contents());
+         FileChannel fc = getFile(blk.fileName());
+         ByteBuffer bb = p.contents();
+         long pos = position(blk);
+         while (bb.hasRemaining())
+            fc.write(bb, pos + bb.position());
+         written(blk.fileName());
+         if (blk.number() >= lengths.get(blk.fileName())) {
+            // the block was written without having been appended
+            synchronized (fc) {
+               int len = Math.max(lengths.get(blk.fileName()), blk.number() + 1);
+               lengths.put(blk.fileName(), len);
+               allocated.put(blk.fileName(), Math.max(allocated.get(blk.fileName()), len));
+            }
+         }
       } catch (IOException e) {
-         throw new RuntimeException("cannot write block" + blk);
+         throw new UncheckedIOException("cannot write block " + blk, e);
       }
    }
 
-   public synchronized BlockId append(String filename) {
-      int newblknum = length(filename);
-      BlockId blk = new BlockId(filename, newblknum);
-      byte[] b = new byte[blocksize];
+   /**
+    * Appends a zeroed block to the end of the file.
+    * The file is grown an extent of blocks at a time,
+    * and subsequent appends hand out the preallocated blocks
+    * without touching the disk.
+    * Appends to the same file are serialized on that file's channel,
+    * so that two appenders can never be handed the same block.
+    */
+   public BlockId append(String filename) {
+      BlockId blk = null;
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.write(b);
+         FileChannel fc = getFile(filename);
+         synchronized (fc) {
+            int newblknum = lengths.get(filename);
+            blk = new BlockId(filename, newblknum);
+            if (newblknum >= allocated.get(filename))
+               preallocate(fc, blk);
+            lengths.put(filename, newblknum + 1);
+         }
       } catch (IOException e) {
-         throw new RuntimeException("cannot append block" + blk);
+         throw new UncheckedIOException("cannot append block " + blk, e);
       }
       return blk;
    }
 
+   /**
+    * Returns the number of blocks in the file.
+    * The count is kept in memory by the file manager, which is
+    * the only writer of its files: it is initialized when the file
+    * is opened and maintained by append and write,
+    * so no system call is made.
+    * Blocks that have been preallocated but not yet
+    * appended are not counted.
+    */
    public int length(String filename) {
       try {
-         RandomAccessFile f = getFile(filename);
-         return (int) (f.length() / blocksize);
+         getFile(filename);
+         return lengths.get(filename);
       } catch (IOException e) {
-         throw new RuntimeException("cannot access " + filename);
+         throw new UncheckedIOException("cannot access " + filename, e);
+      }
+   }
+
+   /**
+    * Forces the specified file to disk, if it has been
+    * written since it was last forced.
+    * 
+    * @param filename the name of the file
+    */
+   public void sync(String filename) {
+      if (unsynced.remove(filename)) {
+         try {
+            getFile(filename).force(false);
+         } catch (IOException e) {
+            throw new UncheckedIOException("cannot sync " + filename, e);
+         }
+      }
+   }
+
+   /**
+    * Forces every file that has been written since it was last forced.
+    * Each file is forced once, however many of its blocks were written.
+    */
+   public void syncAll() {
+      for (String filename : unsynced)
+         sync(filename);
+   }
+
+   /**
+    * Deletes the specified file, closing it first if it is open.
+    * The caller must ensure that the file is no longer in use.
+    * 
+    * @param filename the name of the file
+    */
+   public void delete(String filename) {
+      synchronized (openFiles) {
+         FileChannel fc = openFiles.remove(filename);
+         mappedFiles.remove(filename);
+         lengths.remove(filename);
+         allocated.remove(filename);
+         unsynced.remove(filename);
+         try {
+            if (fc != null)
+               fc.close();
+         } catch (IOException e) {
+            throw new UncheckedIOException("cannot close " + filename, e);
+         }
+         new File(dbDirectory, filename).delete();
+      }
+   }
+
+   /**
+    * Closes the open files, first cutting each back to its
+    * logical length, so that the blocks preallocated for it are
+    * not counted when it is next opened; then removes the marker
+    * that shows the database to be open.
+    * The file manager must not be used afterwards.
+    */
+   public void close() {
+      synchronized (openFiles) {
+         for (Map.Entry<String, FileChannel> e : openFiles.entrySet()) {
+            String filename = e.getKey();
+            FileChannel fc = e.getValue();
+            try {
+               if (allocated.get(filename) > lengths.get(filename))
+                  fc.truncate((long) lengths.get(filename) * blocksize);
+               fc.force(false);
+               fc.close();
+            } catch (IOException ex) {
+               throw new UncheckedIOException("cannot close " + filename, ex);
+            }
+         }
+         openFiles.clear();
+         mappedFiles.clear();
+         new File(dbDirectory, OPEN_MARKER).delete();
       }
    }
 
+   /**
+    * Returns the names of the files in the database directory.
+    * 
+    * @return the names of the files
+    */
+   public String[] list() {
+      return dbDirectory.list();
+   }
+
    public boolean isNew() {
       return isNew;
    }
@@ -78,13 +282,99 @@ public class FileMgr {
       return blocksize;
    }
 
-   private RandomAccessFile getFile(String filename) throws IOException {
-      RandomAccessFile f = openFiles.get(filename);
-      if (f == null) {
-         File dbTable = new File(dbDirectory, filename);
-         f = new RandomAccessFile(dbTable, "rws");
-         openFiles.put(filename, f);
+   public StorageMode storageMode() {
+      return mode;
+   }
+
+   public SyncPolicy syncPolicy() {
+      return policy;
+   }
+
+   /**
+    * Writes an extent of zeroed blocks, starting at the specified block,
+    * with a single write.
+    */
+   private void preallocate(FileChannel fc, BlockId blk) throws IOException {
+      ByteBuffer b = ByteBuffer.allocate(EXTENT_SIZE * blocksize);
+      long pos = position(blk);
+      while (b.hasRemaining())
+         fc.write(b, pos + b.position());
+      allocated.put(blk.fileName(), blk.number() + EXTENT_SIZE);
+      written(blk.fileName());
+   }
+
+   /**
+    * Determines the logical length of a file being opened
+    * after an unclean shutdown, which can leave behind at most
+    * one extent's worth of preallocated blocks, all zeroes;
+    * those are not counted. A block appended but never written
+    * is dropped too, which loses nothing: a block with a logged
+    * change holds it on disk, and so is not all zeroes,
+    * or is written again by recovery, which extends the file.
+    * A file closed cleanly was cut back to its logical length,
+    * and is not read.
+    */
+   private int logicalLength(FileChannel fc, int physical) throws IOException {
+      ByteBuffer bb = ByteBuffer.allocate(blocksize);
+      int len = physical;
+      while (len > 0 && physical - len < EXTENT_SIZE - 1) {
+         bb.clear();
+         long pos = (long) (len - 1) * blocksize;
+         while (bb.hasRemaining() && fc.read(bb, pos + bb.position()) >= 0)
+            ;
+         for (int i = 0; i < blocksize; i++)
+            if (bb.get(i) != 0)
+               return len;
+         len--;
+      }
+      return len;
+   }
+
+   private void written(String filename) {
+      if (policy == SyncPolicy.GROUP && !isTemp(filename))
+         unsynced.add(filename);
+   }
+
+   /**
+    * Returns true if the file holds a temporary table,
+    * whose contents need not survive a crash.
+    * 
+    * @param filename the name of the file
+    * @return true if the file is temporary
+    */
+   public static boolean isTemp(String filename) {
+      return filename.startsWith("temp");
+   }
+
+   private long position(BlockId blk) {
+      return (long) blk.number() * blocksize;
+   }
+
+   private FileChannel getFile(String filename) throws IOException {
+      FileChannel fc = openFiles.get(filename);
+      if (fc == null) {
+         synchronized (openFiles) {
+            fc = openFiles.get(filename);
+            if (fc == null) {
+               File dbTable = new File(dbDirectory, filename);
+               String rafmode = (policy == SyncPolicy.ALWAYS && !isTemp(filename)) ? "rws" : "rw";
+               fc = new RandomAccessFile(dbTable, rafmode).getChannel();
+               int physical = (int) (fc.size() / blocksize);
+               allocated.put(filename, physical);
+               lengths.put(filename, unclean ? logicalLength(fc, physical) : physical);
+               openFiles.put(filename, fc);
+            }
+         }
+      }
+      return fc;
+   }
+
+   private MappedFile getMappedFile(String filename) throws IOException {
+      MappedFile mf = mappedFiles.get(filename);
+      if (mf == null) {
+         FileChannel fc = getFile(filename);
+         mf = mappedFiles.computeIfAbsent(filename, f -> new MappedFile(fc, blocksize));
       }
-      return f;
+      return mf;
    }
 }
@@ -0,0 +1,63 @@
+package simpledb.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only memory mapping of a file, kept as a list of
+ * fixed-size segments.
+ * A segment is mapped lazily, covering only the blocks that
+ * exist in the file at the time, and is remapped when a block
+ * beyond its current extent is requested after the file has grown.
+ * Mapping read-only never extends the file, and writes made
+ * through the channel are visible through the mapping.
+ */
+class MappedFile {
+   static final int SEGMENT_BLOCKS = 1024;
+
+   private FileChannel fc;
+   private int blocksize;
+   private List<MappedByteBuffer> segments = new ArrayList<>();
+
+   MappedFile(FileChannel fc, int blocksize) {
+      this.fc = fc;
+      this.blocksize = blocksize;
+   }
+
+   /**
+    * Returns a read-only view of the specified block,
+    * or null if the block does not lie within the file.
+    * The size of the file is supplied by the caller,
+    * so that no system call is needed to find it.
+    *
+    * @param blknum the block number
+    * @param fileblocks the number of blocks physically in the file
+    * @return a view of the block, or null
+    */
+   synchronized ByteBuffer region(int blknum, int fileblocks) throws IOException {
+      if (blknum >= fileblocks)
+         return null;
+      int segnum = blknum / SEGMENT_BLOCKS;
+      int offset = (blknum % SEGMENT_BLOCKS) * blocksize;
+      MappedByteBuffer seg = segnum < segments.size() ? segments.get(segnum) : null;
+      if (seg == null || seg.capacity() < offset + blocksize)
+         seg = map(segnum, fileblocks);
+      return seg.slice(offset, blocksize);
+   }
+
+   private MappedByteBuffer map(int segnum, int fileblocks) throws IOException {
+      long segstart = (long) segnum * SEGMENT_BLOCKS * blocksize;
+      long available = (long) fileblocks * blocksize - segstart;
+      long size = Math.min(available, (long) SEGMENT_BLOCKS * blocksize);
+      MappedByteBuffer seg = fc.map(MapMode.READ_ONLY, segstart, size);
+      while (segments.size() <= segnum)
+         segments.add(null);
+      segments.set(segnum, seg);
+      return seg;
+   }
+}
@@ -6,16 +6,20 @@ import java.nio.charset.StandardCharsets;
 
 public class Page {
    private ByteBuffer bb;
+   // the page's own storage; bb refers elsewhere while the page is a view
+   private ByteBuffer own;
    public static Charset CHARSET = StandardCharsets.US_ASCII;
 
    // For creating data buffers
    public Page(int blocksize) {
-      bb = ByteBuffer.allocateDirect(blocksize);
+      own = ByteBuffer.allocateDirect(blocksize);
+      bb = own;
    }
 
    // For creating log pages
    public Page(byte[] b) {
-      bb = ByteBuffer.wrap(b);
+      own = ByteBuffer.wrap(b);
+      bb = own;
    }
 
    public int getInt(int offset) {
@@ -23,21 +27,46 @@ public class Page {
    }
 
    public void setInt(int offset, int n) {
+      makeWritable();
       bb.putInt(offset, n);
    }
 
+   public long getLong(int offset) {
+      return bb.getLong(offset);
+   }
+
+   public void setLong(int offset, long n) {
+      makeWritable();
+      bb.putLong(offset, n);
+   }
+
+   // The byte accessors use absolute offsets and leave the buffer's position
+   // alone, so concurrent readers of a page do not interfere with each other.
    public byte[] getBytes(int offset) {
-      bb.position(offset);
-      int length = bb.getInt();
+      int length = bb.getInt(offset);
       byte[] b = new byte[length];
-      bb.get(b);
+      bb.get(offset + Integer.BYTES, b);
       return b;
    }
 
+   /**
+    * Copies the byte array stored at the specified offset
+    * into the caller's array, without allocating.
+    * 
+    * @param offset the offset of the byte array in the page
+    * @param dst    the array to copy into, which must be large enough
+    * @return the number of bytes copied
+    */
+   public int getBytes(int offset, byte[] dst) {
+      int length = bb.getInt(offset);
+      bb.get(offset + Integer.BYTES, dst, 0, length);
+      return length;
+   }
+
    public void setBytes(int offset, byte[] b) {
-      bb.position(offset);
-      bb.putInt(b.length);
-      bb.put(b);
+      makeWritable();
+      bb.putInt(offset, b.length);
+      bb.put(offset + Integer.BYTES, b);
    }
 
    public String getString(int offset) {
@@ -50,14 +79,208 @@ public class Page {
       setBytes(offset, b);
    }
 
+   /*
+    * The variable-length methods below store a value in as few bytes as it
+    * needs, for the compact records of the log. A number is stored seven
+    * bits to a byte, low bits first, with the high bit of each byte set
+    * if another byte follows; it is first zigzag-encoded (0, -1, 1, -2, ...
+    * become 0, 1, 2, 3, ...), so that small negative values are short too.
+    * A string is stored as its length, so encoded, followed by its bytes.
+    */
+
+   /**
+    * Returns the variable-length number stored at the specified offset.
+    * 
+    * @param offset the offset of the number
+    * @return the number
+    */
+   public long getVarLong(int offset) {
+      long v = 0;
+      int shift = 0;
+      byte b;
+      do {
+         b = bb.get(offset++);
+         v |= (long) (b & 0x7f) << shift;
+         shift += 7;
+      } while (b < 0);
+      return (v >>> 1) ^ -(v & 1);
+   }
+
+   /**
+    * Stores a number at the specified offset in
+    * {@link #varLongSize(long)} bytes.
+    * 
+    * @param offset the offset of the number
+    * @param n      the number
+    */
+   public void setVarLong(int offset, long n) {
+      makeWritable();
+      long v = (n << 1) ^ (n >> 63);
+      while ((v & ~0x7fL) != 0) {
+         bb.put(offset++, (byte) (v | 0x80));
+         v >>>= 7;
+      }
+      bb.put(offset, (byte) v);
+   }
+
+   /**
+    * Returns the number of bytes that setVarLong uses for the number.
+    * 
+    * @param n the number
+    * @return its size in bytes
+    */
+   public static int varLongSize(long n) {
+      long v = (n << 1) ^ (n >> 63);
+      int size = 1;
+      while ((v >>>= 7) != 0)
+         size++;
+      return size;
+   }
+
+   public String getVarString(int offset) {
+      int length = (int) getVarLong(offset);
+      byte[] b = new byte[length];
+      bb.get(offset + varLongSize(length), b);
+      return new String(b, CHARSET);
+   }
+
+   public void setVarString(int offset, String s) {
+      byte[] b = s.getBytes(CHARSET);
+      setVarLong(offset, b.length);
+      bb.put(offset + varLongSize(b.length), b);
+   }
+
+   public static int varStringSize(String s) {
+      int length = s.length() * (int) CHARSET.newEncoder().maxBytesPerChar();
+      return varLongSize(length) + length;
+   }
+
+   /*
+    * The string comparison and hashing methods below work directly on the
+    * stored bytes, without creating a String. They assume that CHARSET
+    * encodes each character as one byte, and they give the same results as
+    * the corresponding String methods applied to getString(offset).
+    */
+
+   /**
+    * Compares the string stored at the specified offset with
+    * the specified string, as String.compareTo would.
+    * 
+    * @param offset the offset of the stored string
+    * @param s      the string to compare with
+    * @return a negative, zero, or positive value as the stored string is
+    *         less than, equal to, or greater than s
+    */
+   public int compareString(int offset, String s) {
+      int len = bb.getInt(offset);
+      int n = Math.min(len, s.length());
+      int pos = offset + Integer.BYTES;
+      for (int i = 0; i < n; i++) {
+         char c = charAt(pos + i);
+         if (c != s.charAt(i))
+            return c - s.charAt(i);
+      }
+      return len - s.length();
+   }
+
+   /**
+    * Compares the string stored at the specified offset with
+    * the string stored at an offset of another page,
+    * as String.compareTo would.
+    * 
+    * @param offset      the offset of the stored string
+    * @param other       the page holding the other string
+    * @param otheroffset the offset of the other string
+    * @return a negative, zero, or positive value as the stored string is
+    *         less than, equal to, or greater than the other string
+    */
+   public int compareString(int offset, Page other, int otheroffset) {
+      int len1 = bb.getInt(offset);
+      int len2 = other.bb.getInt(otheroffset);
+      int n = Math.min(len1, len2);
+      int pos1 = offset + Integer.BYTES;
+      int pos2 = otheroffset + Integer.BYTES;
+      for (int i = 0; i < n; i++) {
+         char c1 = charAt(pos1 + i);
+         char c2 = other.charAt(pos2 + i);
+         if (c1 != c2)
+            return c1 - c2;
+      }
+      return len1 - len2;
+   }
+
+   /**
+    * Returns the hash code of the string stored at the specified offset,
+    * which is the same as that of the String returned by getString.
+    * 
+    * @param offset the offset of the stored string
+    * @return the hash code of the stored string
+    */
+   public int hashString(int offset) {
+      int len = bb.getInt(offset);
+      int pos = offset + Integer.BYTES;
+      int h = 0;
+      for (int i = 0; i < len; i++)
+         h = 31 * h + charAt(pos + i);
+      return h;
+   }
+
+   // decodes a stored byte as the single-byte CHARSET decoder would
+   private char charAt(int pos) {
+      byte b = bb.get(pos);
+      return (b >= 0) ? (char) b : '\uFFFD';
+   }
+
    public static int maxLength(int strlen) {
       float bytesPerChar = CHARSET.newEncoder().maxBytesPerChar();
       return Integer.BYTES + (strlen * (int) bytesPerChar);
    }
 
+   /**
+    * Copies the contents of this page into the specified page,
+    * which must be the same size.
+    * 
+    * @param dst the page to copy into
+    */
+   public void copyTo(Page dst) {
+      ByteBuffer src = bb.duplicate();
+      src.position(0);
+      dst.own.position(0);
+      dst.own.put(src);
+      dst.bb = dst.own;
+   }
+
    // a package private method, needed by FileMgr
    ByteBuffer contents() {
       bb.position(0);
       return bb;
    }
+
+   // a package private method, needed by FileMgr to read a block into the page
+   ByteBuffer ownContents() {
+      bb = own;
+      bb.position(0);
+      return bb;
+   }
+
+   // a package private method, needed by FileMgr to make the page a view onto
+   // a memory-mapped block
+   void view(ByteBuffer region) {
+      bb = region;
+   }
+
+   /**
+    * A page that is a view onto a mapped block is copied into its own
+    * storage before its first modification, so that changes reach the
+    * file only when the page is explicitly written.
+    */
+   private void makeWritable() {
+      if (bb != own) {
+         ByteBuffer src = bb.duplicate();
+         src.position(0);
+         own.position(0);
+         own.put(src);
+         bb = own;
+      }
+   }
 }
@@ -0,0 +1,19 @@
+package simpledb.file;
+
+/**
+ * The ways in which the file manager can access the blocks of a file.
+ */
+public enum StorageMode {
+   /**
+    * Every block read copies the block into the page
+    * using a positional channel read.
+    */
+   CHANNEL,
+   /**
+    * Files are mapped into memory in growable segments,
+    * and a block read makes the page a view onto the mapped region.
+    * Writes still go through the channel, so the write-ahead
+    * rule enforced by the buffers is unaffected.
+    */
+   MAPPED
+}
@@ -0,0 +1,23 @@
+package simpledb.file;
+
+/**
+ * The policies that determine when the file manager
+ * forces written blocks to disk.
+ * Temporary files ("temp*") are never forced under either policy,
+ * because their contents need not survive a crash.
+ */
+public enum SyncPolicy {
+   /**
+    * Every write to a non-temporary file is synchronous
+    * (the file is opened in "rws" mode).
+    */
+   ALWAYS,
+   /**
+    * Writes are not synchronous.
+    * The log is forced when {@link simpledb.log.LogMgr#flush(int)}
+    * writes it, and data files are forced together, once per file,
+    * when the buffer manager flushes a transaction at commit
+    * or at a checkpoint.
+    */
+   GROUP
+}
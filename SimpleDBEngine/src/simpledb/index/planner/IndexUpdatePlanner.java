@@ -44,13 +44,12 @@ public class IndexUpdatePlanner implements UpdatePlanner {
       s.insert();
       RID rid = s.getRid();
 
-      // then modify each field, inserting an index record if appropriate
+      // then set its fields, and insert an index record where appropriate
+      s.setVals(data.fields(), data.vals());
       Map<String, IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
       Iterator<Constant> valIter = data.vals().iterator();
       for (String fldname : data.fields()) {
          Constant val = valIter.next();
-         s.setVal(fldname, val);
-
          IndexInfo ii = indexes.get(fldname);
          if (ii != null) {
             Index idx = ii.open();
@@ -8,6 +8,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.NClob;
 import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.SQLXML;
@@ -187,10 +188,10 @@ public abstract class ConnectionAdapter implements Connection {
       throw new SQLException("operation not implemented");
    }
 
-   public void setClientInfo(String name, String value) {
+   public void setClientInfo(String name, String value) throws SQLClientInfoException {
    }
 
-   public void setClientInfo(Properties properties) {
+   public void setClientInfo(Properties properties) throws SQLClientInfoException {
    }
 
    public void setHoldability(int holdability) throws SQLException {
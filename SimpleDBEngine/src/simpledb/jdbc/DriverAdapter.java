@@ -17,6 +17,15 @@ import java.util.logging.Logger;
  * @author Edward Sciore
  */
 public abstract class DriverAdapter implements Driver {
+   /**
+    * The connection property that makes the transactions of a
+    * connection commit asynchronously, when its value is "true";
+    * see {@link simpledb.tx.Transaction#setAsyncCommit(boolean)}.
+    * It can be passed to connect, or set on the connection
+    * with setClientInfo.
+    */
+   public static final String ASYNC_COMMIT = "asyncCommit";
+
    public boolean acceptsURL(String url) throws SQLException {
       throw new SQLException("operation not implemented");
    }
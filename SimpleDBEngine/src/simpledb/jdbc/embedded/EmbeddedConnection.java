@@ -1,7 +1,10 @@
 package simpledb.jdbc.embedded;
 
+import static simpledb.jdbc.DriverAdapter.ASYNC_COMMIT;
+
 import java.rmi.RemoteException;
 import java.sql.SQLException;
+import java.util.Properties;
 
 import simpledb.jdbc.ConnectionAdapter;
 import simpledb.plan.Planner;
@@ -18,6 +21,7 @@ class EmbeddedConnection extends ConnectionAdapter {
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean asyncCommit = false;
 
    /**
     * Creates a connection
@@ -50,7 +54,7 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void commit() throws SQLException {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
 
    /**
@@ -58,7 +62,35 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void rollback() throws SQLException {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+
+   /**
+    * Sets a client property of the connection.
+    * The only property is {@link simpledb.jdbc.DriverAdapter#ASYNC_COMMIT},
+    * which applies to the current transaction and the ones after it;
+    * other properties are ignored.
+    */
+   public void setClientInfo(String name, String value) {
+      if (ASYNC_COMMIT.equals(name)) {
+         asyncCommit = Boolean.parseBoolean(value);
+         currentTx.setAsyncCommit(asyncCommit);
+      }
+   }
+
+   public void setClientInfo(Properties properties) {
+      for (String name : properties.stringPropertyNames())
+         setClientInfo(name, properties.getProperty(name));
+   }
+
+   public String getClientInfo(String name) {
+      return ASYNC_COMMIT.equals(name) ? String.valueOf(asyncCommit) : null;
+   }
+
+   public Properties getClientInfo() {
+      Properties p = new Properties();
+      p.setProperty(ASYNC_COMMIT, String.valueOf(asyncCommit));
+      return p;
    }
 
    /**
@@ -70,4 +102,10 @@ class EmbeddedConnection extends ConnectionAdapter {
    Transaction getTransaction() {
       return currentTx;
    }
+
+   private Transaction newTx() {
+      Transaction tx = db.newTx();
+      tx.setAsyncCommit(asyncCommit);
+      return tx;
+   }
 }
@@ -16,12 +16,17 @@ public class EmbeddedDriver extends DriverAdapter {
    /**
     * Creates a new RemoteConnectionImpl object and
     * returns it.
+    * The properties are set on the connection
+    * as its client info; see {@link #ASYNC_COMMIT}.
     * 
     * @see simpledb.jdbc.network.RemoteDriver#connect()
     */
    public EmbeddedConnection connect(String url, Properties p) throws SQLException {
       String dbname = url.replace("jdbc:simpledb:", "");
       SimpleDB db = new SimpleDB(dbname);
-      return new EmbeddedConnection(db);
+      EmbeddedConnection conn = new EmbeddedConnection(db);
+      if (p != null)
+         conn.setClientInfo(p);
+      return conn;
    }
 }
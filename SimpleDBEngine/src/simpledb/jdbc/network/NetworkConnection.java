@@ -1,7 +1,11 @@
 package simpledb.jdbc.network;
 
+import static simpledb.jdbc.DriverAdapter.ASYNC_COMMIT;
+
+import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Properties;
 
 import simpledb.jdbc.ConnectionAdapter;
 
@@ -35,4 +39,40 @@ public class NetworkConnection extends ConnectionAdapter {
          throw new SQLException(e);
       }
    }
+
+   /**
+    * Sets a client property of the connection.
+    * The only property is {@link simpledb.jdbc.DriverAdapter#ASYNC_COMMIT};
+    * other properties are ignored.
+    */
+   public void setClientInfo(String name, String value) throws SQLClientInfoException {
+      if (ASYNC_COMMIT.equals(name)) {
+         try {
+            rconn.setAsyncCommit(Boolean.parseBoolean(value));
+         } catch (Exception e) {
+            throw new SQLClientInfoException(null, e);
+         }
+      }
+   }
+
+   public void setClientInfo(Properties properties) throws SQLClientInfoException {
+      for (String name : properties.stringPropertyNames())
+         setClientInfo(name, properties.getProperty(name));
+   }
+
+   public String getClientInfo(String name) throws SQLException {
+      if (!ASYNC_COMMIT.equals(name))
+         return null;
+      try {
+         return String.valueOf(rconn.isAsyncCommit());
+      } catch (Exception e) {
+         throw new SQLException(e);
+      }
+   }
+
+   public Properties getClientInfo() throws SQLException {
+      Properties p = new Properties();
+      p.setProperty(ASYNC_COMMIT, getClientInfo(ASYNC_COMMIT));
+      return p;
+   }
 }
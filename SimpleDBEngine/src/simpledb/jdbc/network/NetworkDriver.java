@@ -25,8 +25,8 @@ public class NetworkDriver extends DriverAdapter {
     * This stub is wrapped in a SimpleConnection object
     * and is returned.
     * <P>
-    * The current implementation of this method ignores the
-    * properties argument.
+    * The properties are set on the connection as its client info;
+    * see {@link #ASYNC_COMMIT}.
     * 
     * @see java.sql.Driver#connect(java.lang.String, Properties)
     */
@@ -36,7 +36,10 @@ public class NetworkDriver extends DriverAdapter {
          Registry reg = LocateRegistry.getRegistry(host, 1099);
          RemoteDriver rdvr = (RemoteDriver) reg.lookup("simpledb");
          RemoteConnection rconn = rdvr.connect();
-         return new NetworkConnection(rconn);
+         NetworkConnection conn = new NetworkConnection(rconn);
+         if (prop != null)
+            conn.setClientInfo(prop);
+         return conn;
       } catch (Exception e) {
          throw new SQLException(e);
       }
@@ -14,4 +14,8 @@ public interface RemoteConnection extends Remote {
    public RemoteStatement createStatement() throws RemoteException;
 
    public void close() throws RemoteException;
+
+   public void setAsyncCommit(boolean async) throws RemoteException;
+
+   public boolean isAsyncCommit() throws RemoteException;
 }
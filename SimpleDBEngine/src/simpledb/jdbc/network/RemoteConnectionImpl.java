@@ -17,6 +17,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean asyncCommit = false;
 
    /**
     * Creates a remote connection
@@ -49,6 +50,21 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
       currentTx.commit();
    }
 
+   /**
+    * Sets whether the current transaction and the ones after it
+    * commit asynchronously.
+    * 
+    * @see simpledb.jdbc.network.RemoteConnection#setAsyncCommit(boolean)
+    */
+   public void setAsyncCommit(boolean async) throws RemoteException {
+      asyncCommit = async;
+      currentTx.setAsyncCommit(async);
+   }
+
+   public boolean isAsyncCommit() throws RemoteException {
+      return asyncCommit;
+   }
+
    // The following methods are used by the server-side classes.
 
    /**
@@ -67,7 +83,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void commit() {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
 
    /**
@@ -76,6 +92,12 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void rollback() {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+
+   private Transaction newTx() {
+      Transaction tx = db.newTx();
+      tx.setAsyncCommit(asyncCommit);
+      return tx;
    }
 }
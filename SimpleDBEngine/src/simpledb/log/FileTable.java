@@ -0,0 +1,103 @@
+package simpledb.log;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import simpledb.file.BlockId;
+import simpledb.file.FileMgr;
+import simpledb.file.Page;
+
+/**
+ * The table of the files named in the log, which gives each
+ * file a small number, so that a log record can identify a file
+ * by its number instead of repeating its name.
+ * The table is kept in a file of its own, next to the log,
+ * as the list of names in the order they were added;
+ * the number of a file is its position in the list.
+ * Each block of the file holds a count followed by that many names.
+ * A name is written and forced to disk before its number is
+ * returned, and so before any log record can use the number;
+ * names are never removed, so every record in the log can be read.
+ */
+public class FileTable {
+   private FileMgr fm;
+   private String filename;
+   private Map<String, Integer> ids = new ConcurrentHashMap<>();
+   private List<String> names = new CopyOnWriteArrayList<>();
+   // the last block of the table, and the end of its names
+   private Page page;
+   private int blknum, pos;
+
+   /**
+    * Reads the table from the specified file,
+    * which is empty if the table is new.
+    *
+    * @param fm       the file manager
+    * @param filename the name of the table's file
+    */
+   FileTable(FileMgr fm, String filename) {
+      this.fm = fm;
+      this.filename = filename;
+      page = new Page(new byte[fm.blockSize()]);
+      pos = Integer.BYTES;
+      int nblocks = fm.length(filename);
+      for (blknum = 0; blknum < nblocks; blknum++) {
+         fm.read(new BlockId(filename, blknum), page);
+         int count = page.getInt(0);
+         pos = Integer.BYTES;
+         for (int i = 0; i < count; i++) {
+            String name = page.getString(pos);
+            pos += Page.maxLength(name.length());
+            ids.put(name, names.size());
+            names.add(name);
+         }
+      }
+      blknum = Math.max(nblocks - 1, 0);
+   }
+
+   /**
+    * Returns the number of the specified file,
+    * adding the file to the table if it is not there yet.
+    *
+    * @param name the name of the file
+    * @return the number of the file
+    */
+   public int id(String name) {
+      Integer id = ids.get(name);
+      return (id != null) ? id : add(name);
+   }
+
+   /**
+    * Returns the name of the file with the specified number.
+    *
+    * @param id the number of a file
+    * @return the name of the file
+    */
+   public String name(int id) {
+      return names.get(id);
+   }
+
+   private synchronized int add(String name) {
+      Integer id = ids.get(name);
+      if (id != null)
+         return id;
+      int size = Page.maxLength(name.length());
+      if (Integer.BYTES + size > fm.blockSize())
+         throw new IllegalArgumentException("file name too long for the log: " + name);
+      if (pos + size > fm.blockSize()) {
+         blknum++;
+         pos = Integer.BYTES;
+         page = new Page(new byte[fm.blockSize()]);
+      }
+      page.setString(pos, name);
+      pos += size;
+      page.setInt(0, page.getInt(0) + 1);
+      fm.write(new BlockId(filename, blknum), page);
+      fm.sync(filename);
+      names.add(name);
+      ids.put(name, names.size() - 1);
+      return names.size() - 1;
+   }
+}
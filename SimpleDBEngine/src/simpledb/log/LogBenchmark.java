@@ -0,0 +1,53 @@
+package simpledb.log;
+
+import java.io.File;
+
+import simpledb.file.FileMgr;
+
+/**
+ * Measures the throughput of concurrent appenders,
+ * with 1 to 64 threads.
+ * Each thread appends records of 40 bytes; in the second run,
+ * every tenth record is a commit, which waits for the log to be flushed.
+ */
+public class LogBenchmark {
+   private static final int RECORDS = 200000;
+
+   public static void main(String[] args) throws InterruptedException {
+      System.out.println("threads  appends/s  (append only)  appends/s  (commit every 10)");
+      for (int threads = 1; threads <= 64; threads *= 2) {
+         long plain = run(threads, 0);
+         long commits = run(threads, 10);
+         System.out.printf("%7d  %10d                 %10d%n", threads, plain, commits);
+      }
+   }
+
+   private static long run(int threads, int commitEvery) throws InterruptedException {
+      File dir = new File("logbenchmark");
+      if (dir.exists())
+         for (File f : dir.listFiles())
+            f.delete();
+      LogMgr lm = new LogMgr(new FileMgr(dir, 400), "simpledb.log");
+      // fewer records when every commit waits for the disk
+      int perThread = (commitEvery == 0 ? RECORDS : RECORDS / 20) / threads;
+      Thread[] ts = new Thread[threads];
+      long start = System.nanoTime();
+      for (int i = 0; i < threads; i++) {
+         ts[i] = new Thread(() -> {
+            byte[] rec = new byte[40];
+            for (int j = 1; j <= perThread; j++) {
+               if (commitEvery > 0 && j % commitEvery == 0)
+                  lm.flushCommit(lm.append(rec));
+               else
+                  lm.append(rec);
+            }
+         });
+         ts[i].start();
+      }
+      for (Thread t : ts)
+         t.join();
+      long nanos = System.nanoTime() - start;
+      lm.close();
+      return (long) perThread * threads * 1_000_000_000L / nanos;
+   }
+}
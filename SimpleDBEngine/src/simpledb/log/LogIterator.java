@@ -2,33 +2,39 @@ package simpledb.log;
 
 import java.util.Iterator;
 
-import simpledb.file.BlockId;
-import simpledb.file.FileMgr;
 import simpledb.file.Page;
 
 /**
  * A class that provides the ability to move through the
  * records of the log file in reverse order.
+ * Besides next(), which returns a copy of each record,
+ * the iterator can step through the records with advance(),
+ * which leaves each record in the iterator's page to be
+ * decoded in place, allocating nothing.
  * 
  * @author Edward Sciore
  */
-class LogIterator implements Iterator<byte[]> {
-   private FileMgr fm;
-   private BlockId blk;
+public class LogIterator implements Iterator<byte[]> {
+   private LogMgr lm;
+   private int blocksize;
+   private int blknum;
    private Page p;
    private int currentpos;
+   private int recordpos, recordlen;
+   private long lsn = -1;
    private int boundary;
 
    /**
     * Creates an iterator for the records in the log file,
     * positioned after the last log record.
     */
-   public LogIterator(FileMgr fm, BlockId blk) {
-      this.fm = fm;
-      this.blk = blk;
-      byte[] b = new byte[fm.blockSize()];
+   LogIterator(LogMgr lm, int blocksize, int blknum) {
+      this.lm = lm;
+      this.blocksize = blocksize;
+      this.blknum = blknum;
+      byte[] b = new byte[blocksize];
       p = new Page(b);
-      moveToBlock(blk);
+      moveToBlock(blknum);
    }
 
    /**
@@ -38,7 +44,7 @@ class LogIterator implements Iterator<byte[]> {
     * @return true if there is an earlier record
     */
    public boolean hasNext() {
-      return currentpos < fm.blockSize() || blk.number() > 0;
+      return currentpos < blocksize || blknum > lm.firstBlock();
    }
 
    /**
@@ -50,13 +56,61 @@ class LogIterator implements Iterator<byte[]> {
     * @return the next earliest log record
     */
    public byte[] next() {
-      if (currentpos == fm.blockSize()) {
-         blk = new BlockId(blk.fileName(), blk.number() - 1);
-         moveToBlock(blk);
+      advance();
+      return p.getBytes(recordpos - Integer.BYTES);
+   }
+
+   /**
+    * Moves to the next log record without copying it.
+    * The record's bytes are then at {@link #recordOffset()}
+    * in {@link #page()}, until the iterator moves again.
+    */
+   public void advance() {
+      if (currentpos == blocksize) {
+         blknum--;
+         moveToBlock(blknum);
       }
-      byte[] rec = p.getBytes(currentpos);
-      currentpos += Integer.BYTES + rec.length;
-      return rec;
+      recordlen = p.getInt(currentpos);
+      recordpos = currentpos + Integer.BYTES;
+      lsn = (long) blknum * blocksize + (blocksize - currentpos);
+      currentpos = recordpos + recordlen;
+   }
+
+   /**
+    * Returns the page holding the current log record.
+    * 
+    * @return the iterator's page
+    */
+   public Page page() {
+      return p;
+   }
+
+   /**
+    * Returns the offset of the current log record's first byte in the page.
+    * 
+    * @return the offset of the current record
+    */
+   public int recordOffset() {
+      return recordpos;
+   }
+
+   /**
+    * Returns the length of the current log record, in bytes.
+    * 
+    * @return the length of the current record
+    */
+   public int recordLength() {
+      return recordlen;
+   }
+
+   /**
+    * Returns the LSN of the current log record,
+    * the same LSN that {@link LogMgr#append} returned for it.
+    * 
+    * @return the LSN of the current log record
+    */
+   public long lsn() {
+      return lsn;
    }
 
    /**
@@ -64,8 +118,8 @@ class LogIterator implements Iterator<byte[]> {
     * and positions it at the first record in that block
     * (i.e., the most recent one).
     */
-   private void moveToBlock(BlockId blk) {
-      fm.read(blk, p);
+   private void moveToBlock(int blknum) {
+      lm.readBlock(blknum, p);
       boundary = p.getInt(0);
       currentpos = boundary;
    }
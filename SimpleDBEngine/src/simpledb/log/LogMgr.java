@@ -1,6 +1,10 @@
 package simpledb.log;
 
-import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import simpledb.file.BlockId;
 import simpledb.file.FileMgr;
@@ -9,56 +13,334 @@ import simpledb.file.Page;
 /**
  * The log manager, which is responsible for
  * writing log records into a log file. The tail of
- * the log is kept in a bytebuffer, which is flushed
+ * the log is kept in a ring of pages, which are flushed
  * to disk when needed.
- * 
+ * <p>
+ * An appender reserves space for its record by a compare-and-set
+ * on the tail position, and then copies the record into the page
+ * without holding any lock, so that appenders work in parallel.
+ * The LSN of a record is its byte offset in the log:
+ * within a block, records are written right to left,
+ * so the LSN of a record in block b at position pos
+ * is b * blocksize + (blocksize - pos).
+ * When a record does not fit in the current page, the appender seals
+ * the page and moves the tail to the next one; a background thread
+ * writes the sealed pages. An appender waits only if every page
+ * of the ring is sealed and not yet written.
+ * <p>
+ * Flushes are grouped: while one thread (the leader) writes
+ * and forces the log, the other threads that need the log
+ * flushed wait for it, and the next of them to need a flush
+ * becomes the leader of the next group, whose single write covers
+ * every record appended meanwhile. So concurrent committers share
+ * the cost of forcing the log.
+ * A leader flushing for a commit can first wait for a short
+ * commit delay, so that more committers join its group.
+ * An asynchronous commit does not wait at all: a second background
+ * thread flushes its record within the asynchronous commit delay.
+ * <p>
+ * The log is stored as a sequence of segment files of
+ * {@link #SEGMENT_SIZE} blocks each, named after the log file
+ * with the segment number appended (simpledb.log.0, simpledb.log.1, ...).
+ * Block numbers, and so LSNs, run on across segments;
+ * {@link #truncate(long)} deletes the segments that recovery
+ * no longer needs.
+ * The files named in log records are numbered by a {@link FileTable},
+ * kept in a file named after the log file with ".files" appended.
+ *
  * @author Edward Sciore
  */
 public class LogMgr {
+   // the number of log pages kept in memory
+   static final int RING_SIZE = 8;
+   // the number of blocks in each segment file
+   static final int SEGMENT_SIZE = 1024;
+
    private FileMgr fm;
    private String logfile;
-   private Page logpage;
-   private BlockId currentblk;
-   private int latestLSN = 0;
-   private int lastSavedLSN = 0;
+   private int blocksize;
+   // the first block of the oldest segment
+   private volatile int firstBlock;
+   private Page[] ring = new Page[RING_SIZE];
+   // the number of appenders that may be copying into each page
+   private AtomicInteger[] copying = new AtomicInteger[RING_SIZE];
+   // the final boundary of each sealed page
+   private int[] sealedBoundary = new int[RING_SIZE];
+   // the current block number in the high half, and its boundary in the low half
+   private AtomicLong tail;
+   // the last block that is sealed, and the last whose sealed page is written
+   private volatile int lastSealed, lastWritten;
+   // the LSN up to which the log is on disk; advanced under ioLock
+   private volatile long lastSavedLSN;
+   private Object ioLock = new Object();
+   private Page flushpage;
+
+   // guards the waits for sealed and written pages
+   private ReentrantLock ringLock = new ReentrantLock();
+   private Condition sealed = ringLock.newCondition();
+   private Condition written = ringLock.newCondition();
+   private Thread flusher;
+   private volatile boolean running = true;
+
+   // guards the fields of the group flush
+   private ReentrantLock groupLock = new ReentrantLock();
+   private Condition saved = groupLock.newCondition();
+   private boolean flushing = false;
+   // the committers that will be covered by the next group flush
+   private int pending = 0;
+   // incremented each time a leader takes the pending committers
+   private long generation = 0;
+   private long commitDelay = 0; // nanoseconds
+
+   // the highest LSN that an asynchronous commit left to the async flusher
+   private long asyncLSN = -1;
+   private Object asyncLock = new Object();
+   private long asyncDelay = 10_000_000; // nanoseconds
+   private Thread asyncFlusher;
+   private LogStats stats = new LogStats(this);
+   private FileTable fileTable;
 
    /**
     * Creates the manager for the specified log file.
-    * If the log file does not yet exist, it is created
+    * If the log has no segments yet, the first one is created
     * with an empty first block.
-    * 
+    *
     * @param FileMgr the file manager
     * @param logfile the name of the log file
     */
    public LogMgr(FileMgr fm, String logfile) {
       this.fm = fm;
       this.logfile = logfile;
-      byte[] b = new byte[fm.blockSize()];
-      logpage = new Page(b);
-      int logsize = fm.length(logfile);
-      if (logsize == 0)
-         currentblk = appendNewBlock();
-      else {
-         currentblk = new BlockId(logfile, logsize - 1);
-         fm.read(currentblk, logpage);
+      blocksize = fm.blockSize();
+      fileTable = new FileTable(fm, logfile + ".files");
+      for (int i = 0; i < RING_SIZE; i++) {
+         ring[i] = new Page(new byte[blocksize]);
+         copying[i] = new AtomicInteger();
+      }
+      flushpage = new Page(new byte[blocksize]);
+      int blknum = lastBlock();
+      int boundary;
+      if (blknum < firstBlock) {
+         blknum = firstBlock;
+         boundary = blocksize;
+         ring[slot(blknum)].setInt(0, boundary);
+         fm.write(blockId(blknum), ring[slot(blknum)]);
+      } else {
+         // read through a separate page, which may become a view of a mapped block
+         fm.read(blockId(blknum), flushpage);
+         flushpage.copyTo(ring[slot(blknum)]);
+         boundary = ring[slot(blknum)].getInt(0);
       }
+      tail = new AtomicLong(position(blknum, boundary));
+      lastSealed = lastWritten = blknum - 1;
+      lastSavedLSN = lsn(blknum, boundary);
+      flusher = new Thread(this::drain, "log flusher");
+      flusher.setDaemon(true);
+      flusher.start();
+      asyncFlusher = new Thread(this::flushAsyncCommits, "async commit flusher");
+      asyncFlusher.setDaemon(true);
+      asyncFlusher.start();
    }
 
    /**
     * Ensures that the log record corresponding to the
     * specified LSN has been written to disk.
     * All earlier log records will also be written to disk.
+    *
+    * @param lsn the LSN of a log record
+    */
+   public void flush(long lsn) {
+      flush(lsn, false);
+   }
+
+   /**
+    * Ensures that the specified commit (or rollback) record
+    * has been written to disk, as {@link #flush(long)} does.
+    * If this thread leads the flush, it first waits
+    * for the commit delay, so that other committers can
+    * join its group.
+    *
+    * @param lsn the LSN of the commit record
+    */
+   public void flushCommit(long lsn) {
+      flush(lsn, true);
+   }
+
+   /**
+    * Arranges for the specified commit record to be written to disk
+    * within the asynchronous commit delay, without waiting for it.
+    * A crash before then loses the commit, but only the commit:
+    * the log is written in order, so a later record can reach
+    * the disk only together with this one.
+    *
+    * @param lsn the LSN of the commit record
+    */
+   public void flushAsync(long lsn) {
+      if (lsn <= lastSavedLSN)
+         return;
+      synchronized (asyncLock) {
+         if (lsn > asyncLSN) {
+            asyncLSN = lsn;
+            asyncLock.notify();
+         }
+      }
+   }
+
+   /**
+    * Sets the longest time that an asynchronous commit
+    * can wait for its record to be written to disk.
+    * The default is 10 milliseconds.
+    *
+    * @param millis the asynchronous commit delay in milliseconds
+    */
+   public void setAsyncCommitDelay(long millis) {
+      asyncDelay = millis * 1_000_000;
+   }
+
+   /**
+    * Sets how long a leader flushing for a commit waits
+    * for other committers before writing the log.
+    * The default, 0, means that it does not wait;
+    * grouping then comes only from the committers that
+    * arrive while a flush is in progress.
+    *
+    * @param micros the commit delay in microseconds
+    */
+   public void setCommitDelay(long micros) {
+      commitDelay = micros * 1000;
+      stats.delaySet(micros);
+   }
+
+   /**
+    * Returns the statistics of the log's flushes.
+    *
+    * @return the log's statistics
+    */
+   public LogStats stats() {
+      return stats;
+   }
+
+   /**
+    * Writes the whole log to disk and stops the background flusher.
+    * The log manager must not be used afterwards.
+    */
+   public void close() {
+      running = false;
+      synchronized (asyncLock) {
+         asyncLock.notify();
+      }
+      // the flusher may be waiting out the delay
+      LockSupport.unpark(asyncFlusher);
+      try {
+         asyncFlusher.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      ringLock.lock();
+      try {
+         sealed.signalAll();
+      } finally {
+         ringLock.unlock();
+      }
+      try {
+         flusher.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      synchronized (ioLock) {
+         writeLog(true);
+      }
+   }
+
+   /**
+    * Returns the log record with the specified LSN.
+    * The log is first flushed, if the record is not yet on disk.
     * 
     * @param lsn the LSN of a log record
+    * @return the bytes of the record
+    */
+   public byte[] read(long lsn) {
+      flush(lsn);
+      int blknum = (int) (lsn / blocksize);
+      int pos = blocksize - (int) (lsn % blocksize);
+      Page p = new Page(new byte[blocksize]);
+      fm.read(blockId(blknum), p);
+      return p.getBytes(pos);
+   }
+
+   public LogIterator iterator() {
+      long t = tail.get();
+      flush(lsn(block(t), boundary(t)));
+      int blknum = block(t);
+      if (boundary(t) == blocksize && blknum > firstBlock)
+         blknum--; // the current block has no records
+      return new LogIterator(this, blocksize, blknum);
+   }
+
+   /**
+    * Returns the table that numbers the files named in the log.
+    *
+    * @return the log's file table
+    */
+   public FileTable fileTable() {
+      return fileTable;
+   }
+
+   /**
+    * Returns the size of the largest record that fits in a log page.
+    *
+    * @return the maximum size of a log record, in bytes
+    */
+   public int maxRecordSize() {
+      return blocksize - 2 * Integer.BYTES;
+   }
+
+   /**
+    * Returns the LSN of the last record appended to the log,
+    * or a lower bound on the LSN of the next one if the
+    * current page is empty. Every record appended later
+    * has a greater LSN.
+    *
+    * @return the LSN at the end of the log
+    */
+   public long endLSN() {
+      long t = tail.get();
+      return lsn(block(t), boundary(t));
+   }
+
+   /**
+    * Deletes the segments all of whose records have LSNs
+    * below the specified LSN. The segment holding the tail
+    * of the log is never deleted.
+    * The caller must ensure that no record below the LSN
+    * will be read again: recovery must not need it,
+    * and no active transaction may roll back to it.
+    *
+    * @param lsn the LSN of the oldest record to keep
     */
-   public void flush(int lsn) {
-      if (lsn >= lastSavedLSN)
-         flush();
+   public synchronized void truncate(long lsn) {
+      int keep = (int) (lsn / blocksize) / SEGMENT_SIZE;
+      int current = (lastWritten + 1) / SEGMENT_SIZE;
+      int seg = firstBlock / SEGMENT_SIZE;
+      while (seg < keep && seg < current) {
+         firstBlock = (seg + 1) * SEGMENT_SIZE;
+         fm.delete(segmentName(seg));
+         seg++;
+      }
    }
 
-   public Iterator<byte[]> iterator() {
-      flush();
-      return new LogIterator(fm, currentblk);
+   /**
+    * Reads the specified block of the log into the page.
+    */
+   void readBlock(int blknum, Page p) {
+      fm.read(blockId(blknum), p);
+   }
+
+   /**
+    * Returns the number of the first block that is still in the log.
+    */
+   int firstBlock() {
+      return firstBlock;
    }
 
    /**
@@ -70,42 +352,284 @@ public class LogMgr {
     * of the last-written record (the "boundary").
     * Storing the records backwards makes it easy to read
     * them in reverse order.
-    * 
+    * <p>
+    * The appender registers as copying into the page before it
+    * reserves its space, so that a thread that writes the page
+    * after the reservation waits for the copy to finish.
+    *
     * @param logrec a byte buffer containing the bytes.
     * @return the LSN of the final value
     */
-   public synchronized int append(byte[] logrec) {
-      int boundary = logpage.getInt(0);
-      int recsize = logrec.length;
-      int bytesneeded = recsize + Integer.BYTES;
-      if (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
-         flush(); // so move to the next block.
-         currentblk = appendNewBlock();
-         boundary = logpage.getInt(0);
+   public long append(byte[] logrec) {
+      int bytesneeded = logrec.length + Integer.BYTES;
+      if (logrec.length > maxRecordSize())
+         throw new IllegalArgumentException("log record too large: " + logrec.length + " bytes");
+      while (true) {
+         long t = tail.get();
+         int blknum = block(t);
+         int boundary = boundary(t);
+         if (boundary - bytesneeded >= Integer.BYTES) {
+            int s = slot(blknum);
+            int recpos = boundary - bytesneeded;
+            copying[s].incrementAndGet();
+            try {
+               if (tail.compareAndSet(t, position(blknum, recpos))) {
+                  ring[s].setBytes(recpos, logrec);
+                  return lsn(blknum, recpos);
+               }
+            } finally {
+               copying[s].decrementAndGet();
+            }
+         } else { // the log record doesn't fit, so move to the next block.
+            awaitFreePage(blknum + 1);
+            if (tail.compareAndSet(t, position(blknum + 1, blocksize)))
+               seal(blknum, boundary);
+         }
       }
-      int recpos = boundary - bytesneeded;
+   }
 
-      logpage.setBytes(recpos, logrec);
-      logpage.setInt(0, recpos); // the new boundary
-      latestLSN += 1;
-      return latestLSN;
+   /**
+    * Records the final boundary of a page that the tail has left,
+    * and wakes the background flusher to write it.
+    * The pages are sealed in block order.
+    */
+   private void seal(int blknum, int boundary) {
+      while (lastSealed < blknum - 1)
+         Thread.onSpinWait(); // the previous page's sealer has not finished
+      sealedBoundary[slot(blknum)] = boundary;
+      lastSealed = blknum;
+      ringLock.lock();
+      try {
+         sealed.signalAll();
+      } finally {
+         ringLock.unlock();
+      }
    }
 
    /**
-    * Initialize the bytebuffer and append it to the log file.
+    * Waits until the page of the ring that the specified block
+    * will use no longer holds an unwritten block.
     */
-   private BlockId appendNewBlock() {
-      BlockId blk = fm.append(logfile);
-      logpage.setInt(0, fm.blockSize());
-      fm.write(blk, logpage);
-      return blk;
+   private void awaitFreePage(int blknum) {
+      if (blknum - RING_SIZE <= lastWritten)
+         return;
+      ringLock.lock();
+      try {
+         while (blknum - RING_SIZE > lastWritten)
+            written.awaitUninterruptibly();
+      } finally {
+         ringLock.unlock();
+      }
    }
 
    /**
-    * Write the buffer to the log file.
+    * The body of the background flusher, which writes
+    * the sealed pages as they appear.
     */
-   private void flush() {
-      fm.write(currentblk, logpage);
-      lastSavedLSN = latestLSN;
+   private void drain() {
+      while (running) {
+         ringLock.lock();
+         try {
+            while (running && lastSealed <= lastWritten)
+               sealed.awaitUninterruptibly();
+         } finally {
+            ringLock.unlock();
+         }
+         synchronized (ioLock) {
+            if (writeLog(false))
+               stats.flushed(0);
+         }
+      }
+   }
+
+   /**
+    * The body of the async commit flusher. When an asynchronous
+    * commit arrives, it waits for the delay to pass, so that
+    * the commits made meanwhile are flushed along with it,
+    * and then flushes the log as far as the latest of them.
+    */
+   private void flushAsyncCommits() {
+      while (running) {
+         synchronized (asyncLock) {
+            while (running && asyncLSN <= lastSavedLSN) {
+               try {
+                  asyncLock.wait();
+               } catch (InterruptedException e) {
+                  // only close() stops the flusher
+               }
+            }
+         }
+         LockSupport.parkNanos(asyncDelay);
+         long lsn;
+         synchronized (asyncLock) {
+            lsn = asyncLSN;
+         }
+         flush(lsn);
+      }
+   }
+
+   /**
+    * Flushes the log up to the specified LSN, as part of a group.
+    * If a flush is in progress, the thread waits for it;
+    * if that flush does not cover the LSN,
+    * the thread leads the next one.
+    */
+   private void flush(long lsn, boolean commit) {
+      if (lsn <= lastSavedLSN)
+         return;
+      groupLock.lock();
+      try {
+         long gen = generation;
+         if (commit)
+            pending++;
+         while (flushing && lsn > lastSavedLSN)
+            saved.awaitUninterruptibly();
+         if (lsn <= lastSavedLSN) {
+            if (commit && gen == generation)
+               pending--; // covered by a flush whose group it did not join
+            return;
+         }
+         flushing = true;
+      } finally {
+         groupLock.unlock();
+      }
+
+      try {
+         if (commit && commitDelay > 0)
+            LockSupport.parkNanos(commitDelay);
+         int batch;
+         groupLock.lock();
+         try {
+            batch = pending;
+            pending = 0;
+            generation++;
+         } finally {
+            groupLock.unlock();
+         }
+         synchronized (ioLock) {
+            writeLog(true);
+         }
+         stats.flushed(batch);
+      } finally {
+         groupLock.lock();
+         try {
+            flushing = false;
+            saved.signalAll();
+         } finally {
+            groupLock.unlock();
+         }
+      }
+   }
+
+   /**
+    * Writes the sealed pages that have not yet been written and,
+    * if partial is true, a copy of the current page as far as it
+    * has been reserved; then forces the segments written.
+    * Each page is written once its appenders have finished copying.
+    * Must be called while holding ioLock.
+    *
+    * @return true if anything was written
+    */
+   private boolean writeLog(boolean partial) {
+      long t = tail.get();
+      int current = block(t);
+      while (lastSealed < current - 1)
+         Thread.onSpinWait(); // the sealer has not yet recorded the boundary
+      int last = partial ? current - 1 : lastSealed;
+      long lsn = lastSavedLSN;
+      int first = lastWritten + 1, wroteTo = first - 1;
+      for (int blknum = first; blknum <= last; blknum++) {
+         int s = slot(blknum);
+         awaitCopies(s);
+         ring[s].setInt(0, sealedBoundary[s]);
+         fm.write(blockId(blknum), ring[s]);
+         lsn = lsn(blknum + 1, blocksize);
+         wroteTo = blknum;
+      }
+      if (partial && lsn(current, boundary(t)) > lsn) {
+         int s = slot(current);
+         awaitCopies(s);
+         ring[s].copyTo(flushpage);
+         flushpage.setInt(0, boundary(t));
+         fm.write(blockId(current), flushpage);
+         lsn = lsn(current, boundary(t));
+         wroteTo = current;
+      }
+      if (wroteTo < first)
+         return false;
+      for (int seg = first / SEGMENT_SIZE; seg <= wroteTo / SEGMENT_SIZE; seg++)
+         fm.sync(segmentName(seg));
+      lastSavedLSN = lsn;
+      if (last > lastWritten) {
+         lastWritten = last;
+         ringLock.lock();
+         try {
+            written.signalAll();
+         } finally {
+            ringLock.unlock();
+         }
+      }
+      return true;
+   }
+
+   private void awaitCopies(int slot) {
+      while (copying[slot].get() > 0)
+         Thread.onSpinWait();
+   }
+
+   /**
+    * Finds the segments of the log, setting firstBlock to the
+    * first block of the oldest one, and returns the number of the
+    * last block in the log, or firstBlock - 1 if the log is empty.
+    * The newest segment can be empty if a crash followed
+    * its creation, in which case the log ends in the one before.
+    */
+   private int lastBlock() {
+      String prefix = logfile + ".";
+      int firstseg = Integer.MAX_VALUE, lastseg = -1;
+      for (String filename : fm.list()) {
+         if (filename.startsWith(prefix) && filename.substring(prefix.length()).matches("\\d+")) {
+            int seg = Integer.parseInt(filename.substring(prefix.length()));
+            firstseg = Math.min(firstseg, seg);
+            lastseg = Math.max(lastseg, seg);
+         }
+      }
+      if (lastseg < 0) {
+         firstBlock = 0;
+         return -1;
+      }
+      firstBlock = firstseg * SEGMENT_SIZE;
+      int len = fm.length(segmentName(lastseg));
+      if (len == 0 && lastseg > firstseg)
+         len = fm.length(segmentName(--lastseg));
+      return lastseg * SEGMENT_SIZE + len - 1;
+   }
+
+   private String segmentName(int seg) {
+      return logfile + "." + seg;
+   }
+
+   private BlockId blockId(int blknum) {
+      return new BlockId(segmentName(blknum / SEGMENT_SIZE), blknum % SEGMENT_SIZE);
+   }
+
+   private long lsn(int blknum, int pos) {
+      return (long) blknum * blocksize + (blocksize - pos);
+   }
+
+   private static int slot(int blknum) {
+      return blknum % RING_SIZE;
+   }
+
+   private static long position(int blknum, int boundary) {
+      return ((long) blknum << 32) | boundary;
+   }
+
+   private static int block(long position) {
+      return (int) (position >>> 32);
+   }
+
+   private static int boundary(long position) {
+      return (int) position;
    }
 }
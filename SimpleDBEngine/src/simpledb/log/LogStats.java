@@ -0,0 +1,105 @@
+package simpledb.log;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of the log's group flushes, counted from
+ * the creation of the log manager.
+ * A flush's batch is the number of committers whose commit
+ * records it wrote and who waited for it; the larger the
+ * batches, the fewer times the log is forced per commit.
+ * The statistics also count the checkpoints that failed,
+ * which the checkpointer retries in its next round.
+ * The statistics are published over JMX by {@link simpledb.server.SimpleDB}.
+ */
+public class LogStats implements LogStatsMXBean {
+   private LogMgr lm;
+   private LongAdder flushes = new LongAdder();
+   private LongAdder commits = new LongAdder();
+   // the flushes that wrote at least one commit
+   private LongAdder batches = new LongAdder();
+   private LongAccumulator maxBatch = new LongAccumulator(Math::max, 0);
+   private volatile long commitDelay = 0;
+   private LongAdder failedCheckpoints = new LongAdder();
+
+   LogStats(LogMgr lm) {
+      this.lm = lm;
+   }
+
+   /**
+    * Returns the number of times the log was written and forced.
+    */
+   public long getFlushes() {
+      return flushes.sum();
+   }
+
+   /**
+    * Returns the number of commits made durable by group flushes.
+    */
+   public long getGroupedCommits() {
+      return commits.sum();
+   }
+
+   /**
+    * Returns the average number of commits per flush,
+    * counting only the flushes that wrote a commit.
+    */
+   public double getAverageBatchSize() {
+      long n = batches.sum();
+      return (n == 0) ? 0 : (double) getGroupedCommits() / n;
+   }
+
+   /**
+    * Returns the largest number of commits made durable by one flush.
+    */
+   public long getMaxBatchSize() {
+      return maxBatch.get();
+   }
+
+   public long getCommitDelayMicros() {
+      return commitDelay;
+   }
+
+   /**
+    * Sets the commit delay, as {@link LogMgr#setCommitDelay(long)} does.
+    */
+   public void setCommitDelayMicros(long micros) {
+      lm.setCommitDelay(micros);
+   }
+
+   /**
+    * Returns the number of background checkpoints that failed.
+    */
+   public long getFailedCheckpoints() {
+      return failedCheckpoints.sum();
+   }
+
+   public String toString() {
+      return String.format("flushes=%d commits=%d (average batch %.2f, largest %d) delay=%d us"
+            + " failed checkpoints=%d",
+            getFlushes(), getGroupedCommits(), getAverageBatchSize(), getMaxBatchSize(),
+            getCommitDelayMicros(), getFailedCheckpoints());
+   }
+
+   /**
+    * Counts a checkpoint that failed;
+    * called by the checkpointer, outside this package.
+    */
+   public void checkpointFailed() {
+      failedCheckpoints.increment();
+   }
+
+   void flushed(int batch) {
+      flushes.increment();
+      if (batch > 0) {
+         batches.increment();
+         commits.add(batch);
+         maxBatch.accumulate(batch);
+      }
+   }
+
+   void delaySet(long micros) {
+      commitDelay = micros;
+   }
+}
@@ -0,0 +1,23 @@
+package simpledb.log;
+
+/**
+ * The management interface through which the statistics
+ * of the log are published over JMX.
+ * See {@link LogStats} for the meaning of each attribute.
+ * The CommitDelayMicros attribute is writable.
+ */
+public interface LogStatsMXBean {
+   long getFlushes();
+
+   long getGroupedCommits();
+
+   double getAverageBatchSize();
+
+   long getMaxBatchSize();
+
+   long getCommitDelayMicros();
+
+   void setCommitDelayMicros(long micros);
+
+   long getFailedCheckpoints();
+}
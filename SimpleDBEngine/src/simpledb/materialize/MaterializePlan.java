@@ -2,6 +2,7 @@ package simpledb.materialize;
 
 import java.util.Arrays;
 
+import simpledb.buffer.BufferRing;
 import simpledb.plan.Plan;
 import simpledb.plan.QueryPlanPrinter;
 import simpledb.query.Scan;
@@ -41,15 +42,17 @@ public class MaterializePlan implements Plan {
       Schema sch = srcplan.schema();
       TempTable temp = new TempTable(tx, sch);
       Scan src = srcplan.open();
-      UpdateScan dest = temp.open();
+      UpdateScan dest = temp.open(new BufferRing());
       while (src.next()) {
          dest.insert();
          for (String fldname : sch.fields())
             dest.setVal(fldname, src.getVal(fldname));
       }
       src.close();
-      dest.beforeFirst();
-      return dest;
+      // the table is written through a ring, but read without one,
+      // since the caller may scan it repeatedly
+      dest.close();
+      return temp.open();
    }
 
    /**
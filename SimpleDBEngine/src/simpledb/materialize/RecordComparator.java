@@ -4,7 +4,6 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
-import simpledb.query.Constant;
 import simpledb.query.Scan;
 
 /**
@@ -46,9 +45,7 @@ public class RecordComparator implements Comparator<Scan> {
    public int compare(Scan s1, Scan s2) {
       for (SortClause clause : clauses) {
          String field = clause.getField();
-         Constant val1 = s1.getVal(field);
-         Constant val2 = s2.getVal(field);
-         int result = val1.compareTo(val2);
+         int result = s1.compareField(field, s2, field);
          if (result != 0)
             return clause.getOrder().getModifier() * result;
       }
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import simpledb.buffer.BufferRing;
 import simpledb.plan.Plan;
 import simpledb.plan.QueryPlanPrinter;
 import simpledb.query.Scan;
@@ -115,16 +116,18 @@ public class SortPlan implements Plan {
       src.beforeFirst();
       if (!src.next())
          return temps;
+      // the runs are written one after another, through a single ring
+      BufferRing ring = new BufferRing();
       TempTable currenttemp = new TempTable(tx, sch);
       temps.add(currenttemp);
-      UpdateScan currentscan = currenttemp.open();
+      UpdateScan currentscan = currenttemp.open(ring);
       while (copy(src, currentscan))
          if (comp.compare(src, currentscan) < 0) {
             // start a new run
             currentscan.close();
             currenttemp = new TempTable(tx, sch);
             temps.add(currenttemp);
-            currentscan = (UpdateScan) currenttemp.open();
+            currentscan = (UpdateScan) currenttemp.open(ring);
          }
       currentscan.close();
       return temps;
@@ -142,14 +145,14 @@ public class SortPlan implements Plan {
 
    private TempTable mergeRuns(List<TempTable> runs) {
       TempTable result = new TempTable(tx, sch);
-      UpdateScan dest = result.open();
+      UpdateScan dest = result.open(new BufferRing());
       int tablecount = Math.min(runs.size(), tx.availableBuffs());
 
       List<Scan> scans = new ArrayList<>(tablecount);
       List<Boolean> hasmore = new ArrayList<>(tablecount);
       for (int i = 0; i < tablecount; i++) {
          TempTable tbl = runs.remove(0);
-         Scan s = tbl.open();
+         Scan s = tbl.open(new BufferRing());
          scans.add(s);
          hasmore.add(s.next());
       }
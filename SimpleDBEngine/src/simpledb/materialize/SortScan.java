@@ -117,6 +117,40 @@ public class SortScan implements Scan {
       return currentscan.getVal(fldname);
    }
 
+   /**
+    * Compare the specified field of the current scan
+    * with the specified constant, in place.
+    * 
+    * @see simpledb.query.Scan#compareField(java.lang.String,
+    *      simpledb.query.Constant)
+    */
+   public int compareField(String fldname, Constant val) {
+      return currentscan.compareField(fldname, val);
+   }
+
+   /**
+    * Compare the specified field of the current scan with a field
+    * of another scan, in place when the other scan is also sorted.
+    * 
+    * @see simpledb.query.Scan#compareField(java.lang.String,
+    *      simpledb.query.Scan, java.lang.String)
+    */
+   public int compareField(String fldname, Scan other, String otherfld) {
+      if (other instanceof SortScan)
+         other = ((SortScan) other).currentscan;
+      return currentscan.compareField(fldname, other, otherfld);
+   }
+
+   /**
+    * Get the hash code of the specified field
+    * of the current scan.
+    * 
+    * @see simpledb.query.Scan#hashField(java.lang.String)
+    */
+   public int hashField(String fldname) {
+      return currentscan.hashField(fldname);
+   }
+
    /**
     * Get the integer value of the specified field
     * of the current scan.
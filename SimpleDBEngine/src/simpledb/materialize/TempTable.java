@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import simpledb.buffer.BufferRing;
 import simpledb.query.UpdateScan;
 import simpledb.record.Layout;
 import simpledb.record.Schema;
@@ -11,6 +12,8 @@ import simpledb.tx.Transaction;
  * A temporary table is not registered in the catalog.
  * The class therefore has a method getTableInfo to return the
  * table's metadata.
+ * A temporary table is also unlogged: its scans write no log
+ * records, and its blocks are not flushed at commit.
  * 
  * @author Edward Sciore
  */
@@ -37,7 +40,19 @@ public class TempTable {
     * Open a table scan for the temporary table.
     */
    public UpdateScan open() {
-      return new TableScan(tx, tblname, layout);
+      return new TableScan(tx, tblname, layout, null, false);
+   }
+
+   /**
+    * Open a table scan for the temporary table that reads
+    * and writes its blocks through the specified ring of buffers.
+    * Suited to a scan that visits each block once, such as
+    * the writing or merging of a sorted run.
+    * 
+    * @param ring the scan's ring of buffers
+    */
+   public UpdateScan open(BufferRing ring) {
+      return new TableScan(tx, tblname, layout, ring, false);
    }
 
    public String tableName() {
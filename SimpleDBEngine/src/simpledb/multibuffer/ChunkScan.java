@@ -5,6 +5,7 @@ import static java.sql.Types.INTEGER;
 import java.util.ArrayList;
 import java.util.List;
 
+import simpledb.buffer.BufferRing;
 import simpledb.file.BlockId;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
@@ -35,14 +36,32 @@ public class ChunkScan implements Scan {
     * @param tx        the current transaction
     */
    public ChunkScan(Transaction tx, String filename, Layout layout, int startbnum, int endbnum) {
+      this(tx, filename, layout, startbnum, endbnum, null);
+   }
+
+   /**
+    * Create a chunk consisting of the specified pages,
+    * reading the pages that are not buffered into the ring's buffers.
+    * A scan that moves through a file chunk by chunk can use a ring
+    * the size of a chunk, so that each chunk reuses the buffers of
+    * the previous one.
+    * 
+    * @param ring the scan's ring of buffers, or null
+    */
+   public ChunkScan(Transaction tx, String filename, Layout layout, int startbnum, int endbnum,
+         BufferRing ring) {
       this.tx = tx;
       this.filename = filename;
       this.layout = layout;
       this.startbnum = startbnum;
       this.endbnum = endbnum;
+      // load the whole chunk with one read; the record pages then find their blocks
+      // already buffered, and the chunk's pins are held by the record pages alone
+      tx.pinRange(new BlockId(filename, startbnum), endbnum - startbnum + 1, ring);
       for (int i = startbnum; i <= endbnum; i++) {
          BlockId blk = new BlockId(filename, i);
          buffs.add(new RecordPage(tx, blk, layout));
+         tx.unpin(blk);
       }
       moveToBlock(startbnum);
    }
@@ -107,6 +126,29 @@ public class ChunkScan implements Scan {
          return new Constant(getString(fldname));
    }
 
+   /**
+    * @see simpledb.query.Scan#compareField(java.lang.String, simpledb.query.Constant)
+    */
+   public int compareField(String fldname, Constant val) {
+      int type = layout.schema().type(fldname);
+      if (type != val.type())
+         return Scan.super.compareField(fldname, val);
+      if (type == INTEGER)
+         return Integer.compare(getInt(fldname), val.asInt());
+      else
+         return rp.compareString(currentslot, fldname, val.asString());
+   }
+
+   /**
+    * @see simpledb.query.Scan#hashField(java.lang.String)
+    */
+   public int hashField(String fldname) {
+      if (layout.schema().type(fldname) == INTEGER)
+         return Integer.hashCode(getInt(fldname));
+      else
+         return rp.hashString(currentslot, fldname);
+   }
+
    /**
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
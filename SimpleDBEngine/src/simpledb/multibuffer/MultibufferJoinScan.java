@@ -1,5 +1,6 @@
 package simpledb.multibuffer;
 
+import simpledb.buffer.BufferRing;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
 import simpledb.query.Term;
@@ -17,6 +18,7 @@ public class MultibufferJoinScan implements Scan {
     private Scan outer, inner;
     private Term term;
     private int chunksize, nextblknum, filesize;
+    private BufferRing ring;
     private boolean first = true;
 
     /**
@@ -36,6 +38,7 @@ public class MultibufferJoinScan implements Scan {
         this.term = term;
         this.filesize = tx.size(filename);
         this.chunksize = BufferNeeds.bestFactor(tx.availableBuffs(), filesize);
+        this.ring = new BufferRing(chunksize);
         beforeFirst();
     }
 
@@ -52,7 +55,7 @@ public class MultibufferJoinScan implements Scan {
         int end = nextblknum + chunksize - 1;
         if (end >= filesize)
             end = filesize - 1;
-        outer = new ChunkScan(tx, filename, outerlayout, nextblknum, end);
+        outer = new ChunkScan(tx, filename, outerlayout, nextblknum, end, ring);
         nextblknum = end + 1;
         first = true;
     }
@@ -166,7 +169,7 @@ public class MultibufferJoinScan implements Scan {
             int end = nextblknum + chunksize - 1;
             if (end >= filesize)
                 end = filesize - 1;
-            outer = new ChunkScan(tx, filename, outerlayout, nextblknum, end);
+            outer = new ChunkScan(tx, filename, outerlayout, nextblknum, end, ring);
             nextblknum = end + 1;
         }
         inner.beforeFirst();
@@ -2,6 +2,7 @@ package simpledb.multibuffer;
 
 import java.util.Arrays;
 
+import simpledb.buffer.BufferRing;
 import simpledb.materialize.MaterializePlan;
 import simpledb.materialize.TempTable;
 import simpledb.plan.Plan;
@@ -121,7 +122,7 @@ public class MultibufferProductPlan implements Plan {
       Scan src = p.open();
       Schema sch = p.schema();
       TempTable t = new TempTable(tx, sch);
-      UpdateScan dest = (UpdateScan) t.open();
+      UpdateScan dest = (UpdateScan) t.open(new BufferRing());
       while (src.next()) {
          dest.insert();
          for (String fldname : sch.fields())
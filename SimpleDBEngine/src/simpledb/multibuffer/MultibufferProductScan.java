@@ -1,5 +1,6 @@
 package simpledb.multibuffer;
 
+import simpledb.buffer.BufferRing;
 import simpledb.query.Constant;
 import simpledb.query.ProductScan;
 import simpledb.query.Scan;
@@ -18,6 +19,7 @@ public class MultibufferProductScan implements Scan {
    private String filename;
    private Layout layout;
    private int chunksize, nextblknum, filesize;
+   private BufferRing ring;
 
    /**
     * Creates the scan class for the product of the LHS scan and a table.
@@ -34,6 +36,7 @@ public class MultibufferProductScan implements Scan {
       filesize = tx.size(filename);
       int available = tx.availableBuffs();
       chunksize = BufferNeeds.bestFactor(available, filesize);
+      ring = new BufferRing(chunksize);
       beforeFirst();
    }
 
@@ -125,7 +128,7 @@ public class MultibufferProductScan implements Scan {
       int end = nextblknum + chunksize - 1;
       if (end >= filesize)
          end = filesize - 1;
-      rhsscan = new ChunkScan(tx, filename, layout, nextblknum, end);
+      rhsscan = new ChunkScan(tx, filename, layout, nextblknum, end, ring);
       lhsscan.beforeFirst();
       prodscan = new ProductScan(lhsscan, rhsscan);
       nextblknum = end + 1;
@@ -1,7 +1,5 @@
 package simpledb.plan;
 
-import java.util.Iterator;
-
 import simpledb.metadata.MetadataMgr;
 import simpledb.parse.CreateIndexData;
 import simpledb.parse.CreateTableData;
@@ -56,11 +54,7 @@ public class BasicUpdatePlanner implements UpdatePlanner {
       Plan p = new TablePlan(tx, data.tableName(), mdm);
       UpdateScan us = (UpdateScan) p.open();
       us.insert();
-      Iterator<Constant> iter = data.vals().iterator();
-      for (String fldname : data.fields()) {
-         Constant val = iter.next();
-         us.setVal(fldname, val);
-      }
+      us.setVals(data.fields(), data.vals());
       us.close();
       return 1;
    }
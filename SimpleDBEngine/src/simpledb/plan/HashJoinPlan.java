@@ -135,7 +135,7 @@ public class HashJoinPlan implements Plan {
             scans.add(scan);
         }
         while (s.next()) {
-            int hash = hash(s.getVal(fldname).hashCode(), depth);
+            int hash = hash(s.hashField(fldname), depth);
             int bucket = hash % outputBuffers;
             scans.get(bucket).insert();
             for (String field : t.schema().fields()) {
@@ -197,7 +197,7 @@ public class HashJoinPlan implements Plan {
         Scan s = outerTable.open();
         MultibufferHashTable hashtable = new MultibufferHashTable(tx, buffer_count, IN_MEMORY_HASH_SIZE);
         while (s.next()) {
-            int hash = hash(s.getVal(outerJoinFld).hashCode(), depth + 1);
+            int hash = hash(s.hashField(outerJoinFld), depth + 1);
             InMemoryRecord record = new InMemoryRecord(outerTable.getLayout());
             for (String fldname : outerTable.getLayout().schema().fields()) {
                 record.setVal(fldname, s.getVal(fldname));
@@ -207,9 +207,9 @@ public class HashJoinPlan implements Plan {
         s.close();
         s = innerTable.open();
         while (s.next()) {
-            int hash = hash(s.getVal(innerJoinFld).hashCode(), depth + 1);
+            int hash = hash(s.hashField(innerJoinFld), depth + 1);
             for (InMemoryRecord record : hashtable.getBucket(hash)) {
-                if (s.getVal(innerJoinFld).equals(record.getVal(outerJoinFld))) {
+                if (s.compareField(innerJoinFld, record.getVal(outerJoinFld)) == 0) {
                     result.insert();
                     for (String fldname : sch.fields()) {
                         if (s.hasField(fldname)) {
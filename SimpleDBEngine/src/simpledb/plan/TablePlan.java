@@ -1,5 +1,6 @@
 package simpledb.plan;
 
+import simpledb.buffer.BufferRing;
 import simpledb.metadata.MetadataMgr;
 import simpledb.metadata.StatInfo;
 import simpledb.query.Scan;
@@ -35,10 +36,15 @@ public class TablePlan implements Plan {
 
    /**
     * Creates a table scan for this query.
+    * A table too large to fit in the available buffers
+    * is scanned through a ring of buffers, so that the scan
+    * does not replace every page in the pool.
     * 
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
+      if (si.blocksAccessed() > tx.availableBuffs())
+         return new TableScan(tx, tblname, layout, new BufferRing());
       return new TableScan(tx, tblname, layout);
    }
 
@@ -1,7 +1,12 @@
 package simpledb.query;
 
+import static java.sql.Types.INTEGER;
+import static java.sql.Types.VARCHAR;
+
 /**
  * The class that denotes values stored in the database.
+ * Constants of different types are never equal;
+ * integers order before strings.
  * 
  * @author Edward Sciore
  */
@@ -25,6 +30,16 @@ public class Constant implements Comparable<Constant> {
       return sval;
    }
 
+   /**
+    * Returns the type of the constant, as the type
+    * of a field is given by a schema.
+    * 
+    * @return INTEGER or VARCHAR
+    */
+   public int type() {
+      return (ival != null) ? INTEGER : VARCHAR;
+   }
+
    public boolean equals(Object obj) {
       if (obj == null) {
          return false;
@@ -34,6 +49,8 @@ public class Constant implements Comparable<Constant> {
    }
 
    public int compareTo(Constant c) {
+      if (type() != c.type())
+         return (ival != null) ? -1 : 1;
       return (ival != null) ? ival.compareTo(c.ival) : sval.compareTo(c.sval);
    }
 
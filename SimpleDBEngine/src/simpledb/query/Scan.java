@@ -49,6 +49,47 @@ public interface Scan {
     */
    public Constant getVal(String fldname);
 
+   /**
+    * Compare the value of the specified field in the current record
+    * with the specified constant.
+    * Scans that can compare a stored value in place override this
+    * method, so that the value need not be read into a Constant;
+    * values of different types compare as Constants do.
+    * 
+    * @param fldname the name of the field
+    * @param val     the constant to compare with
+    * @return a negative, zero, or positive value as the field's value is
+    *         less than, equal to, or greater than val
+    */
+   public default int compareField(String fldname, Constant val) {
+      return getVal(fldname).compareTo(val);
+   }
+
+   /**
+    * Compare the value of the specified field in the current record
+    * with the value of a field in the current record of another scan.
+    * 
+    * @param fldname  the name of the field
+    * @param other    the other scan
+    * @param otherfld the name of the field in the other scan
+    * @return a negative, zero, or positive value as the field's value is
+    *         less than, equal to, or greater than the other field's value
+    */
+   public default int compareField(String fldname, Scan other, String otherfld) {
+      return getVal(fldname).compareTo(other.getVal(otherfld));
+   }
+
+   /**
+    * Return the hash code of the value of the specified field in the
+    * current record, which is the same as the hash code of getVal(fldname).
+    * 
+    * @param fldname the name of the field
+    * @return the hash code of the field's value
+    */
+   public default int hashField(String fldname) {
+      return getVal(fldname).hashCode();
+   }
+
    /**
     * Return true if the scan has the specified field.
     * 
@@ -1,5 +1,7 @@
 package simpledb.query;
 
+import java.util.List;
+
 import simpledb.record.RID;
 
 /**
@@ -52,6 +54,14 @@ public class SelectScan implements UpdateScan {
 		return s.getVal(fldname);
 	}
 
+	public int compareField(String fldname, Constant val) {
+		return s.compareField(fldname, val);
+	}
+
+	public int hashField(String fldname) {
+		return s.hashField(fldname);
+	}
+
 	public boolean hasField(String fldname) {
 		return s.hasField(fldname);
 	}
@@ -77,6 +87,11 @@ public class SelectScan implements UpdateScan {
 		us.setVal(fldname, val);
 	}
 
+	public void setVals(List<String> fldnames, List<Constant> vals) {
+		UpdateScan us = (UpdateScan) s;
+		us.setVals(fldnames, vals);
+	}
+
 	public void delete() {
 		UpdateScan us = (UpdateScan) s;
 		us.delete();
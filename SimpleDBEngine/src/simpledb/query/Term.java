@@ -34,23 +34,16 @@ public class Term {
     *         scan
     */
    public boolean isSatisfied(Scan s) {
-      Constant lhsval = lhs.evaluate(s);
-      Constant rhsval = rhs.evaluate(s);
-      switch (op) {
-         case EQ:
-            return lhsval.equals(rhsval);
-         case NEQ:
-            return !lhsval.equals(rhsval);
-         case GTE:
-            return lhsval.compareTo(rhsval) >= 0;
-         case GT:
-            return lhsval.compareTo(rhsval) > 0;
-         case LTE:
-            return lhsval.compareTo(rhsval) <= 0;
-         case LT:
-            return lhsval.compareTo(rhsval) < 0;
-      }
-      return false;
+      int cmp;
+      if (lhs.isFieldName() && rhs.isFieldName())
+         cmp = s.compareField(lhs.asFieldName(), s, rhs.asFieldName());
+      else if (lhs.isFieldName())
+         cmp = s.compareField(lhs.asFieldName(), rhs.asConstant());
+      else if (rhs.isFieldName())
+         cmp = -s.compareField(rhs.asFieldName(), lhs.asConstant());
+      else
+         cmp = lhs.asConstant().compareTo(rhs.asConstant());
+      return satisfies(cmp);
    }
 
    /**
@@ -67,36 +60,50 @@ public class Term {
       if (!lhs.isFieldName() || !rhs.isFieldName()) {
          throw new RuntimeException("Expected both expressions in term to be fields.");
       }
-      Constant lhsval = null;
-      Constant rhsval = null;
+      Scan lhsscan = null;
+      Scan rhsscan = null;
       if (scan1.hasField(lhs.asFieldName())) {
-         lhsval = lhs.evaluate(scan1);
+         lhsscan = scan1;
       } else if (scan2.hasField(lhs.asFieldName())) {
-         lhsval = lhs.evaluate(scan2);
+         lhsscan = scan2;
       } else {
          throw new RuntimeException("Field not found.");
       }
 
       if (scan1.hasField(rhs.asFieldName())) {
-         rhsval = rhs.evaluate(scan1);
+         rhsscan = scan1;
       } else if (scan2.hasField(rhs.asFieldName())) {
-         rhsval = rhs.evaluate(scan2);
+         rhsscan = scan2;
       } else {
          throw new RuntimeException("Field not found.");
       }
+      return satisfies(lhsscan.compareField(lhs.asFieldName(), rhsscan, rhs.asFieldName()));
+   }
+
+   /**
+    * Return true if the result of comparing the LHS value
+    * with the RHS value satisfies the term's operator.
+    * The values are compared in place by the scans where possible
+    * (see {@link Scan#compareField(String, Constant)}),
+    * so that string fields need not be read into Constants.
+    * 
+    * @param cmp the result of the comparison
+    * @return true if the comparison satisfies the operator
+    */
+   private boolean satisfies(int cmp) {
       switch (op) {
          case EQ:
-            return lhsval.equals(rhsval);
+            return cmp == 0;
          case NEQ:
-            return !lhsval.equals(rhsval);
+            return cmp != 0;
          case GTE:
-            return lhsval.compareTo(rhsval) >= 0;
+            return cmp >= 0;
          case GT:
-            return lhsval.compareTo(rhsval) > 0;
+            return cmp > 0;
          case LTE:
-            return lhsval.compareTo(rhsval) <= 0;
+            return cmp <= 0;
          case LT:
-            return lhsval.compareTo(rhsval) < 0;
+            return cmp < 0;
       }
       return false;
    }
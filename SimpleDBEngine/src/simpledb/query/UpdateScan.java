@@ -1,5 +1,7 @@
 package simpledb.query;
 
+import java.util.List;
+
 import simpledb.record.RID;
 
 /**
@@ -32,6 +34,18 @@ public interface UpdateScan extends Scan {
     */
    public void setString(String fldname, String val);
 
+   /**
+    * Modify several field values of the current record.
+    * By default, each field is set in turn.
+    * 
+    * @param fldnames the names of the fields
+    * @param vals     the new values, in the same order
+    */
+   public default void setVals(List<String> fldnames, List<Constant> vals) {
+      for (int i = 0; i < fldnames.size(); i++)
+         setVal(fldnames.get(i), vals.get(i));
+   }
+
    /**
     * Insert a new record somewhere in the scan.
     */
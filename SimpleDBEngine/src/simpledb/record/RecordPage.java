@@ -2,6 +2,9 @@ package simpledb.record;
 
 import static java.sql.Types.INTEGER;
 
+import java.util.List;
+
+import simpledb.buffer.BufferRing;
 import simpledb.file.BlockId;
 import simpledb.tx.Transaction;
 
@@ -15,12 +18,32 @@ public class RecordPage {
    private Transaction tx;
    private BlockId blk;
    private Layout layout;
+   private boolean logged;
 
    public RecordPage(Transaction tx, BlockId blk, Layout layout) {
+      this(tx, blk, layout, null);
+   }
+
+   /**
+    * Pins the block, taking the buffer from the specified ring
+    * if the block is not already buffered.
+    */
+   public RecordPage(Transaction tx, BlockId blk, Layout layout, BufferRing ring) {
+      this(tx, blk, layout, ring, true);
+   }
+
+   /**
+    * Pins the block, as the 4-arg constructor does.
+    * If logged is false, changes to the page's records
+    * are not logged, and so cannot be rolled back or recovered;
+    * this suits temporary tables.
+    */
+   public RecordPage(Transaction tx, BlockId blk, Layout layout, BufferRing ring, boolean logged) {
       this.tx = tx;
       this.blk = blk;
       this.layout = layout;
-      tx.pin(blk);
+      this.logged = logged;
+      tx.pin(blk, ring);
    }
 
    /**
@@ -47,6 +70,48 @@ public class RecordPage {
       return tx.getString(blk, fldpos);
    }
 
+   /**
+    * Compare the string value stored for the specified field
+    * of the specified slot with the specified string.
+    * 
+    * @param fldname the name of the field.
+    * @param val     the string to compare with
+    * @return the result of comparing the stored string with val
+    */
+   public int compareString(int slot, String fldname, String val) {
+      int fldpos = offset(slot) + layout.offset(fldname);
+      return tx.compareString(blk, fldpos, val);
+   }
+
+   /**
+    * Compare the string value stored for the specified field
+    * of the specified slot with the value of a field of
+    * a slot in another record page.
+    * 
+    * @param fldname   the name of the field.
+    * @param other     the other record page
+    * @param otherslot the slot in the other record page
+    * @param otherfld  the name of the field in the other record page
+    * @return the result of comparing the two stored strings
+    */
+   public int compareString(int slot, String fldname, RecordPage other, int otherslot, String otherfld) {
+      int fldpos = offset(slot) + layout.offset(fldname);
+      int otherpos = other.offset(otherslot) + other.layout.offset(otherfld);
+      return tx.compareString(blk, fldpos, other.blk, otherpos);
+   }
+
+   /**
+    * Return the hash code of the string value stored for the
+    * specified field of the specified slot.
+    * 
+    * @param fldname the name of the field.
+    * @return the hash code of the stored string
+    */
+   public int hashString(int slot, String fldname) {
+      int fldpos = offset(slot) + layout.offset(fldname);
+      return tx.hashString(blk, fldpos);
+   }
+
    /**
     * Store an integer at the specified field
     * of the specified slot.
@@ -56,7 +121,7 @@ public class RecordPage {
     */
    public void setInt(int slot, String fldname, int val) {
       int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setInt(blk, fldpos, val, true);
+      tx.setInt(blk, fldpos, val, logged);
    }
 
    /**
@@ -68,7 +133,21 @@ public class RecordPage {
     */
    public void setString(int slot, String fldname, String val) {
       int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setString(blk, fldpos, val, true);
+      tx.setString(blk, fldpos, val, logged);
+   }
+
+   /**
+    * Store the values of several fields of the specified slot at once,
+    * which is logged as a single change.
+    * 
+    * @param fldnames the names of the fields
+    * @param vals     the values, each an Integer or a String
+    */
+   public void setRow(int slot, List<String> fldnames, List<Object> vals) {
+      int[] offsets = new int[fldnames.size()];
+      for (int i = 0; i < offsets.length; i++)
+         offsets[i] = offset(slot) + layout.offset(fldnames.get(i));
+      tx.setRow(blk, offsets, vals.toArray(), logged);
    }
 
    public void delete(int slot) {
@@ -117,7 +196,7 @@ public class RecordPage {
     * Set the record's empty/inuse flag.
     */
    private void setFlag(int slot, int flag) {
-      tx.setInt(blk, offset(slot), flag, true);
+      tx.setInt(blk, offset(slot), flag, logged);
    }
 
    private int searchAfter(int slot, int flag) {
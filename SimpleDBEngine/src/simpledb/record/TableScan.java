@@ -2,8 +2,13 @@ package simpledb.record;
 
 import static java.sql.Types.INTEGER;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.buffer.BufferRing;
 import simpledb.file.BlockId;
 import simpledb.query.Constant;
+import simpledb.query.Scan;
 import simpledb.query.UpdateScan;
 import simpledb.tx.Transaction;
 
@@ -19,10 +24,39 @@ public class TableScan implements UpdateScan {
    private RecordPage rp;
    private String filename;
    private int currentslot;
+   private BufferRing ring;
+   private boolean logged;
 
    public TableScan(Transaction tx, String tblname, Layout layout) {
+      this(tx, tblname, layout, null);
+   }
+
+   /**
+    * Creates a table scan that reads (and appends) the blocks
+    * of the table through the specified ring of buffers,
+    * so that a scan of a large table occupies only a few buffers.
+    * Blocks visited by {@link #moveToRid(RID)} do not use the ring.
+    * 
+    * @param ring the scan's ring of buffers, or null
+    */
+   public TableScan(Transaction tx, String tblname, Layout layout, BufferRing ring) {
+      this(tx, tblname, layout, ring, true);
+   }
+
+   /**
+    * Creates a table scan as the 4-arg constructor does.
+    * If logged is false, the scan's changes are not logged,
+    * so they cannot be rolled back or recovered; this suits
+    * temporary tables, which never outlive a crash.
+    * 
+    * @param ring   the scan's ring of buffers, or null
+    * @param logged whether the scan's changes are logged
+    */
+   public TableScan(Transaction tx, String tblname, Layout layout, BufferRing ring, boolean logged) {
       this.tx = tx;
       this.layout = layout;
+      this.ring = ring;
+      this.logged = logged;
       filename = tblname + ".tbl";
       if (tx.size(filename) == 0)
          moveToNewBlock();
@@ -62,6 +96,39 @@ public class TableScan implements UpdateScan {
          return new Constant(getString(fldname));
    }
 
+   public int compareField(String fldname, Constant val) {
+      int type = layout.schema().type(fldname);
+      if (type != val.type())
+         return UpdateScan.super.compareField(fldname, val);
+      if (type == INTEGER)
+         return Integer.compare(getInt(fldname), val.asInt());
+      else
+         return rp.compareString(currentslot, fldname, val.asString());
+   }
+
+   // in place only with a table scan's field of the same type,
+   // and for strings, only if the scans share a transaction
+   public int compareField(String fldname, Scan other, String otherfld) {
+      if (other instanceof TableScan) {
+         TableScan ts = (TableScan) other;
+         int type = layout.schema().type(fldname);
+         if (type == ts.layout.schema().type(otherfld)) {
+            if (type == INTEGER)
+               return Integer.compare(getInt(fldname), ts.getInt(otherfld));
+            if (ts.tx == tx)
+               return rp.compareString(currentslot, fldname, ts.rp, ts.currentslot, otherfld);
+         }
+      }
+      return UpdateScan.super.compareField(fldname, other, otherfld);
+   }
+
+   public int hashField(String fldname) {
+      if (layout.schema().type(fldname) == INTEGER)
+         return Integer.hashCode(getInt(fldname));
+      else
+         return rp.hashString(currentslot, fldname);
+   }
+
    public boolean hasField(String fldname) {
       return layout.schema().hasField(fldname);
    }
@@ -88,6 +155,21 @@ public class TableScan implements UpdateScan {
          setString(fldname, val.asString());
    }
 
+   /**
+    * Modifies the fields of the current record together,
+    * so that the change is logged as one record.
+    */
+   public void setVals(List<String> fldnames, List<Constant> vals) {
+      List<Object> row = new ArrayList<>(vals.size());
+      for (int i = 0; i < vals.size(); i++) {
+         if (layout.schema().type(fldnames.get(i)) == INTEGER)
+            row.add(vals.get(i).asInt());
+         else
+            row.add(vals.get(i).asString());
+      }
+      rp.setRow(currentslot, fldnames, row);
+   }
+
    public void insert() {
       currentslot = rp.insertAfter(currentslot);
       while (currentslot < 0) {
@@ -106,7 +188,7 @@ public class TableScan implements UpdateScan {
    public void moveToRid(RID rid) {
       close();
       BlockId blk = new BlockId(filename, rid.blockNumber());
-      rp = new RecordPage(tx, blk, layout);
+      rp = new RecordPage(tx, blk, layout, null, logged);
       currentslot = rid.slot();
    }
 
@@ -119,14 +201,14 @@ public class TableScan implements UpdateScan {
    private void moveToBlock(int blknum) {
       close();
       BlockId blk = new BlockId(filename, blknum);
-      rp = new RecordPage(tx, blk, layout);
+      rp = new RecordPage(tx, blk, layout, ring, logged);
       currentslot = -1;
    }
 
    private void moveToNewBlock() {
       close();
       BlockId blk = tx.append(filename);
-      rp = new RecordPage(tx, blk, layout);
+      rp = new RecordPage(tx, blk, layout, ring, logged);
       rp.format();
       currentslot = -1;
    }
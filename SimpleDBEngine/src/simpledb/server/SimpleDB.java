@@ -1,17 +1,30 @@
 package simpledb.server;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import simpledb.buffer.BufferMgr;
+import simpledb.buffer.BufferPoolDump;
+import simpledb.buffer.BufferStats;
+import simpledb.buffer.ReplacementStrategy;
 import simpledb.file.FileMgr;
+import simpledb.file.StorageMode;
+import simpledb.file.SyncPolicy;
 import simpledb.index.planner.IndexUpdatePlanner;
 import simpledb.log.LogMgr;
+import simpledb.log.LogStats;
 import simpledb.metadata.MetadataMgr;
 import simpledb.opt.HeuristicQueryPlanner;
 import simpledb.plan.Planner;
 import simpledb.plan.QueryPlanner;
 import simpledb.plan.UpdatePlanner;
 import simpledb.tx.Transaction;
+import simpledb.tx.recovery.Checkpointer;
+import simpledb.tx.recovery.RecoveryMgr;
 
 /**
  * The class that configures the system.
@@ -22,10 +35,27 @@ public class SimpleDB {
    public static int BLOCK_SIZE = 400;
    public static int BUFFER_SIZE = 16;
    public static String LOG_FILE = "simpledb.log";
+   public static StorageMode STORAGE_MODE = StorageMode.CHANNEL;
+   public static SyncPolicy SYNC_POLICY = SyncPolicy.ALWAYS;
+   public static ReplacementStrategy REPLACEMENT_POLICY = ReplacementStrategy.LRU;
+   // milliseconds between rounds of the background buffer writer; 0 disables it
+   public static long WRITER_INTERVAL = 0;
+   // save the pool's blocks at shutdown, and read them back in after recovery
+   public static boolean PREWARM = false;
+   // microseconds a committer leading a group flush of the log waits for others
+   public static long COMMIT_DELAY = 0;
+   // milliseconds within which the log of an asynchronous commit reaches the disk
+   public static long ASYNC_COMMIT_DELAY = 10;
+   // milliseconds between checkpoints, taken once recovery is done; 0 disables them
+   public static long CHECKPOINT_INTERVAL = 60000;
+   // threads that redo the log during recovery, each for its own blocks; 1 redoes it serially
+   public static int RECOVERY_THREADS = Runtime.getRuntime().availableProcessors();
 
    private FileMgr fm;
    private BufferMgr bm;
    private LogMgr lm;
+   private BufferPoolDump dump;
+   private Checkpointer checkpointer;
    private MetadataMgr mdm;
    private Planner planner;
 
@@ -37,10 +67,29 @@ public class SimpleDB {
     * @param buffsize  the number of buffers
     */
    public SimpleDB(String dirname, int blocksize, int buffsize) {
+      this(dirname, blocksize, buffsize, STORAGE_MODE);
+   }
+
+   /**
+    * A constructor useful for debugging, which also
+    * selects how the file manager accesses blocks.
+    * 
+    * @param dirname   the name of the database directory
+    * @param blocksize the block size
+    * @param buffsize  the number of buffers
+    * @param mode      the storage mode of the file manager
+    */
+   public SimpleDB(String dirname, int blocksize, int buffsize, StorageMode mode) {
       File dbDirectory = new File(dirname);
-      fm = new FileMgr(dbDirectory, blocksize);
+      fm = new FileMgr(dbDirectory, blocksize, mode, SYNC_POLICY);
       lm = new LogMgr(fm, LOG_FILE);
-      bm = new BufferMgr(fm, lm, buffsize);
+      lm.setCommitDelay(COMMIT_DELAY);
+      lm.setAsyncCommitDelay(ASYNC_COMMIT_DELAY);
+      bm = new BufferMgr(fm, lm, buffsize, REPLACEMENT_POLICY);
+      if (WRITER_INTERVAL > 0)
+         bm.startWriter(WRITER_INTERVAL);
+      dump = new BufferPoolDump(bm, fm, dbDirectory);
+      registerStats(dirname);
    }
 
    /**
@@ -50,14 +99,25 @@ public class SimpleDB {
     * @param dirname the name of the database directory
     */
    public SimpleDB(String dirname) {
-      this(dirname, BLOCK_SIZE, BUFFER_SIZE);
+      this(dirname, STORAGE_MODE);
+   }
+
+   /**
+    * Like the 1-arg constructor, but with the specified storage mode.
+    * Memory-mapped storage suits read-mostly files such as the catalog.
+    * 
+    * @param dirname the name of the database directory
+    * @param mode    the storage mode of the file manager
+    */
+   public SimpleDB(String dirname, StorageMode mode) {
+      this(dirname, BLOCK_SIZE, BUFFER_SIZE, mode);
       Transaction tx = newTx();
       boolean isnew = fm.isNew();
       if (isnew)
          System.out.println("creating new database");
       else {
          System.out.println("recovering existing database");
-         tx.recover();
+         tx.recover(RECOVERY_THREADS);
       }
       mdm = new MetadataMgr(isnew, tx);
       // QueryPlanner qp = new BasicQueryPlanner(mdm);
@@ -66,6 +126,12 @@ public class SimpleDB {
       UpdatePlanner up = new IndexUpdatePlanner(mdm);
       planner = new Planner(qp, up);
       tx.commit();
+      if (PREWARM)
+         dump.prewarm();
+      if (CHECKPOINT_INTERVAL > 0) {
+         checkpointer = new Checkpointer(lm, bm, CHECKPOINT_INTERVAL);
+         checkpointer.start();
+      }
    }
 
    /**
@@ -96,4 +162,79 @@ public class SimpleDB {
    public BufferMgr bufferMgr() {
       return bm;
    }
+
+   /**
+    * Shuts the database down cleanly, once no transaction is active:
+    * stops the checkpointer and the background buffer writer and, if prewarming
+    * is enabled, saves the blocks in the pool so that the next
+    * startup can read them back in; then writes the dirty pages
+    * and a checkpoint, so that the next startup has nothing to redo,
+    * stops the log's flusher and closes the files.
+    */
+   public void shutdown() {
+      if (checkpointer != null)
+         checkpointer.stop();
+      bm.stopWriter();
+      if (PREWARM)
+         dump.save();
+      bm.flushAll();
+      RecoveryMgr.checkpoint(lm, bm);
+      lm.close();
+      fm.close();
+   }
+
+   /**
+    * Changes the number of buffers in the pool while the
+    * database is running; see {@link BufferMgr#resize(int)}.
+    * The pool can also be resized over JMX, by setting the
+    * BufferCount attribute of the pool's MBean.
+    * 
+    * @param numbuffs the new number of buffers
+    */
+   public void resizeBufferPool(int numbuffs) {
+      bm.resize(numbuffs);
+   }
+
+   /**
+    * Returns the statistics of the buffer pool:
+    * hits, misses, evictions, dirty writes, waits and aborts,
+    * in total and per file.
+    * The same statistics are published over JMX as the MBean
+    * "simpledb:type=BufferPool,name=<i>dirname</i>".
+    */
+   public BufferStats bufferStats() {
+      return bm.stats();
+   }
+
+   /**
+    * Returns the statistics of the log's group commit:
+    * the number of flushes and the number of commits per flush.
+    * The same statistics are published over JMX as the MBean
+    * "simpledb:type=Log,name=<i>dirname</i>".
+    */
+   public LogStats logStats() {
+      return lm.stats();
+   }
+
+   /**
+    * Publishes the buffer pool and log statistics over JMX,
+    * replacing those of any earlier database in the same directory.
+    * Monitoring is optional, so a failure is ignored.
+    */
+   private void registerStats(String dirname) {
+      register("BufferPool", dirname, bm.stats());
+      register("Log", dirname, lm.stats());
+   }
+
+   private void register(String type, String dirname, Object mbean) {
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = new ObjectName("simpledb:type=" + type + ",name=" + ObjectName.quote(dirname));
+         if (server.isRegistered(name))
+            server.unregisterMBean(name);
+         server.registerMBean(mbean, name);
+      } catch (JMException e) {
+         // the statistics remain available through bufferStats() and logStats()
+      }
+   }
 }
@@ -7,6 +7,7 @@ import java.util.Map;
 
 import simpledb.buffer.Buffer;
 import simpledb.buffer.BufferMgr;
+import simpledb.buffer.BufferRing;
 import simpledb.file.BlockId;
 
 /**
@@ -42,11 +43,37 @@ class BufferList {
     * @param blk a reference to the disk block
     */
    void pin(BlockId blk) {
-      Buffer buff = bm.pin(blk);
+      pin(blk, null);
+   }
+
+   /**
+    * Pin the block, taking the buffer from the ring if the block
+    * is not already buffered, and keep track of the buffer internally.
+    * 
+    * @param blk  a reference to the disk block
+    * @param ring the scan's ring of buffers, or null
+    */
+   void pin(BlockId blk, BufferRing ring) {
+      Buffer buff = bm.pin(blk, ring);
       buffers.put(blk, buff);
       pins.add(blk);
    }
 
+   /**
+    * Pin a run of consecutive blocks and keep track of the buffers internally.
+    * 
+    * @param first a reference to the first block of the run
+    * @param count the number of blocks to pin
+    * @param ring  the scan's ring of buffers, or null
+    */
+   void pinRange(BlockId first, int count, BufferRing ring) {
+      Buffer[] buffs = bm.pinRange(first, count, ring);
+      for (Buffer buff : buffs) {
+         buffers.put(buff.block(), buff);
+         pins.add(buff.block());
+      }
+   }
+
    /**
     * Unpin the specified block.
     * 
@@ -1,7 +1,10 @@
 package simpledb.tx;
 
+import java.util.function.LongSupplier;
+
 import simpledb.buffer.Buffer;
 import simpledb.buffer.BufferMgr;
+import simpledb.buffer.BufferRing;
 import simpledb.file.BlockId;
 import simpledb.file.FileMgr;
 import simpledb.file.Page;
@@ -25,6 +28,7 @@ public class Transaction {
    private FileMgr fm;
    private int txnum;
    private BufferList mybuffers;
+   private boolean asyncCommit = false;
 
    /**
     * Create a new transaction and its associated
@@ -47,14 +51,29 @@ public class Transaction {
       mybuffers = new BufferList(bm);
    }
 
+   /**
+    * Sets whether the transaction commits asynchronously.
+    * An asynchronous commit returns without waiting for its
+    * commit record to reach the disk; the log manager writes
+    * the record within a bounded delay. A crash in the meantime
+    * loses the transaction, as if it had never committed,
+    * but never leaves the database inconsistent.
+    * 
+    * @param async true if the transaction should commit asynchronously
+    */
+   public void setAsyncCommit(boolean async) {
+      asyncCommit = async;
+   }
+
    /**
     * Commit the current transaction.
-    * Flush all modified buffers (and their log records),
-    * write and flush a commit record to the log,
-    * release all locks, and unpin any pinned buffers.
+    * Flush the modified buffers whose changes were not logged,
+    * write and flush a commit record to the log
+    * (or leave the flush to the log manager, if the commit
+    * is asynchronous), release all locks, and unpin any pinned buffers.
     */
    public void commit() {
-      recoveryMgr.commit();
+      recoveryMgr.commit(asyncCommit);
       System.out.println("transaction " + txnum + " committed");
       concurMgr.release();
       mybuffers.unpinAll();
@@ -76,15 +95,25 @@ public class Transaction {
 
    /**
     * Flush all modified buffers.
-    * Then go through the log, rolling back all
-    * uncommitted transactions. Finally,
-    * write a quiescent checkpoint record to the log.
+    * Then go through the log, redoing the logged changes
+    * and rolling back all uncommitted transactions. Finally,
+    * write a checkpoint record to the log.
     * This method is called during system startup,
     * before user transactions begin.
     */
    public void recover() {
+      recover(1);
+   }
+
+   /**
+    * Recover as the no-arg method does, redoing the log
+    * with the specified number of worker threads.
+    * 
+    * @param threads the number of threads that redo the log
+    */
+   public void recover(int threads) {
       bm.flushAll(txnum);
-      recoveryMgr.recover();
+      recoveryMgr.recover(threads);
    }
 
    /**
@@ -97,6 +126,42 @@ public class Transaction {
       mybuffers.pin(blk);
    }
 
+   /**
+    * Pin the specified block, taking the buffer from the
+    * specified ring if the block is not already buffered.
+    * 
+    * @param blk  a reference to the disk block
+    * @param ring the scan's ring of buffers, or null
+    */
+   public void pin(BlockId blk, BufferRing ring) {
+      mybuffers.pin(blk, ring);
+   }
+
+   /**
+    * Pin a run of consecutive blocks of a file, reading the blocks
+    * that are not already buffered with as few I/O calls as possible.
+    * Each block of the run is pinned once, as if by {@link #pin(BlockId)}.
+    * 
+    * @param first a reference to the first block of the run
+    * @param count the number of blocks to pin
+    */
+   public void pinRange(BlockId first, int count) {
+      mybuffers.pinRange(first, count, null);
+   }
+
+   /**
+    * Pin a run of consecutive blocks of a file, as
+    * {@link #pinRange(BlockId, int)} does, taking the buffers
+    * for the blocks that are not already buffered from the ring.
+    * 
+    * @param first a reference to the first block of the run
+    * @param count the number of blocks to pin
+    * @param ring  the scan's ring of buffers, or null
+    */
+   public void pinRange(BlockId first, int count, BufferRing ring) {
+      mybuffers.pinRange(first, count, ring);
+   }
+
    /**
     * Unpin the specified block.
     * The transaction looks up the buffer pinned to this block,
@@ -158,6 +223,61 @@ public class Transaction {
       return buff.contents().getString(offset);
    }
 
+   /**
+    * Compare the string value stored at the
+    * specified offset of the specified block
+    * with the specified string, without reading the
+    * stored value into a new String.
+    * The method first obtains an SLock on the block.
+    * 
+    * @param blk    a reference to a disk block
+    * @param offset the byte offset within the block
+    * @param val    the string to compare with
+    * @return the result of comparing the stored string with val
+    * @see simpledb.file.Page#compareString(int, String)
+    */
+   public int compareString(BlockId blk, int offset, String val) {
+      concurMgr.sLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      return buff.contents().compareString(offset, val);
+   }
+
+   /**
+    * Compare the string values stored at offsets of two blocks,
+    * without reading either into a new String.
+    * The method first obtains an SLock on both blocks.
+    * 
+    * @param blk1    a reference to the first disk block
+    * @param offset1 the byte offset within the first block
+    * @param blk2    a reference to the second disk block
+    * @param offset2 the byte offset within the second block
+    * @return the result of comparing the first string with the second
+    * @see simpledb.file.Page#compareString(int, Page, int)
+    */
+   public int compareString(BlockId blk1, int offset1, BlockId blk2, int offset2) {
+      concurMgr.sLock(blk1);
+      concurMgr.sLock(blk2);
+      Page p1 = mybuffers.getBuffer(blk1).contents();
+      Page p2 = mybuffers.getBuffer(blk2).contents();
+      return p1.compareString(offset1, p2, offset2);
+   }
+
+   /**
+    * Return the hash code of the string value stored at the
+    * specified offset of the specified block,
+    * without reading it into a new String.
+    * The method first obtains an SLock on the block.
+    * 
+    * @param blk    a reference to a disk block
+    * @param offset the byte offset within the block
+    * @return the hash code of the stored string
+    */
+   public int hashString(BlockId blk, int offset) {
+      concurMgr.sLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      return buff.contents().hashString(offset);
+   }
+
    /**
     * Store an integer at the specified offset
     * of the specified block.
@@ -175,12 +295,16 @@ public class Transaction {
    public void setInt(BlockId blk, int offset, int val, boolean okToLog) {
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setInt(buff, offset, val);
-      Page p = buff.contents();
-      p.setInt(offset, val);
-      buff.setModified(txnum, lsn);
+      // a checkpoint's scan of the dirty pages sees the change
+      // either whole or not yet logged
+      synchronized (buff) {
+         long lsn = -1;
+         if (okToLog)
+            lsn = recoveryMgr.setInt(buff, offset, val);
+         Page p = buff.contents();
+         p.setInt(offset, val);
+         buff.setModified(txnum, lsn);
+      }
    }
 
    /**
@@ -200,12 +324,111 @@ public class Transaction {
    public void setString(BlockId blk, int offset, String val, boolean okToLog) {
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setString(buff, offset, val);
-      Page p = buff.contents();
-      p.setString(offset, val);
-      buff.setModified(txnum, lsn);
+      synchronized (buff) {
+         long lsn = -1;
+         if (okToLog)
+            lsn = recoveryMgr.setString(buff, offset, val);
+         Page p = buff.contents();
+         p.setString(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Store several values in the specified block at once,
+    * such as the fields of a record, logging them as a single
+    * update record. Each value is an Integer or a String.
+    * The method otherwise behaves as setInt and setString.
+    * 
+    * @param blk     a reference to the disk block
+    * @param offsets the byte offsets of the values within that block
+    * @param vals    the values to be stored
+    */
+   public void setRow(BlockId blk, int[] offsets, Object[] vals, boolean okToLog) {
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         long lsn = -1;
+         if (okToLog)
+            lsn = recoveryMgr.setRow(buff, offsets, vals);
+         store(buff.contents(), offsets, vals);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Store an integer at the specified offset of the specified
+    * block on behalf of recovery, which logs the change itself.
+    * The log record is written by the specified function, which returns
+    * its LSN; the LSN becomes the block's page LSN.
+    * The block must be pinned.
+    * 
+    * @param blk    a reference to the disk block
+    * @param offset a byte offset within that block
+    * @param val    the value to be stored
+    * @param log    writes the log record describing the change
+    * @return the LSN of the log record
+    */
+   public long applyInt(BlockId blk, int offset, int val, LongSupplier log) {
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         long lsn = log.getAsLong();
+         buff.contents().setInt(offset, val);
+         buff.setModified(txnum, lsn);
+         return lsn;
+      }
+   }
+
+   /**
+    * Store a string at the specified offset of the specified
+    * block on behalf of recovery; see {@link #applyInt}.
+    * 
+    * @param blk    a reference to the disk block
+    * @param offset a byte offset within that block
+    * @param val    the value to be stored
+    * @param log    writes the log record describing the change
+    * @return the LSN of the log record
+    */
+   public long applyString(BlockId blk, int offset, String val, LongSupplier log) {
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         long lsn = log.getAsLong();
+         buff.contents().setString(offset, val);
+         buff.setModified(txnum, lsn);
+         return lsn;
+      }
+   }
+
+   /**
+    * Store several values in the specified block on behalf
+    * of recovery; see {@link #applyInt}.
+    * 
+    * @param blk     a reference to the disk block
+    * @param offsets the byte offsets of the values within that block
+    * @param vals    the values to be stored, each an Integer or a String
+    * @param log     writes the log record describing the change
+    * @return the LSN of the log record
+    */
+   public long applyRow(BlockId blk, int[] offsets, Object[] vals, LongSupplier log) {
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         long lsn = log.getAsLong();
+         store(buff.contents(), offsets, vals);
+         buff.setModified(txnum, lsn);
+         return lsn;
+      }
+   }
+
+   private static void store(Page p, int[] offsets, Object[] vals) {
+      for (int i = 0; i < offsets.length; i++) {
+         if (vals[i] instanceof Integer)
+            p.setInt(offsets[i], (Integer) vals[i]);
+         else
+            p.setString(offsets[i], (String) vals[i]);
+      }
    }
 
    /**
@@ -213,6 +436,9 @@ public class Transaction {
     * This method first obtains an SLock on the
     * "end of the file", before asking the file manager
     * to return the file size.
+    * The file manager keeps the size of each open file in memory,
+    * so scans can call this method at every block boundary
+    * without a system call.
     * 
     * @param filename the name of the file
     * @return the number of blocks in the file
@@ -238,8 +464,14 @@ public class Transaction {
       return fm.append(filename);
    }
 
+   /**
+    * Returns the number of bytes of a block available to its records,
+    * which excludes the page LSN at the end of the block.
+    * 
+    * @return the usable size of a block
+    */
    public int blockSize() {
-      return fm.blockSize();
+      return fm.blockSize() - Buffer.LSN_SIZE;
    }
 
    public int availableBuffs() {
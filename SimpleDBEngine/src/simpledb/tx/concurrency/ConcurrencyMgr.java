@@ -39,16 +39,18 @@ public class ConcurrencyMgr {
 
    /**
     * Obtain an XLock on the block, if necessary.
-    * If the transaction does not have an XLock on that block,
-    * then the method first gets an SLock on that block
-    * (if necessary), and then upgrades it to an XLock.
+    * If the transaction has an SLock on that block,
+    * the method upgrades it to an XLock; if it has no lock,
+    * it asks the lock table for an XLock directly.
     * 
     * @param blk a reference to the disk block
     */
    public void xLock(BlockId blk) {
       if (!hasXLock(blk)) {
-         sLock(blk);
-         locktbl.xLock(blk);
+         if (locks.get(blk) == null)
+            locktbl.xLock(blk);
+         else
+            locktbl.upgrade(blk);
          locks.put(blk, "X");
       }
    }
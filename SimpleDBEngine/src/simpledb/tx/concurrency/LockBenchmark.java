@@ -0,0 +1,73 @@
+package simpledb.tx.concurrency;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.file.BlockId;
+
+/**
+ * Measures the throughput of the lock table with 1 to 64 threads,
+ * on a few hot blocks that every thread locks and on
+ * many cold blocks that the threads seldom share.
+ * Each operation locks a block and unlocks it;
+ * one operation in ten takes an XLock, half of those
+ * by upgrading an SLock. Aborted requests are counted.
+ */
+public class LockBenchmark {
+   private static final int OPERATIONS = 200000;
+   private static final int HOT_BLOCKS = 4, COLD_BLOCKS = 100000;
+
+   public static void main(String[] args) throws InterruptedException {
+      System.out.println("threads  locks/s (hot)  aborts  locks/s (cold)  aborts");
+      for (int threads = 1; threads <= 64; threads *= 2) {
+         AtomicLong hotAborts = new AtomicLong(), coldAborts = new AtomicLong();
+         long hot = run(threads, HOT_BLOCKS, hotAborts);
+         long cold = run(threads, COLD_BLOCKS, coldAborts);
+         System.out.printf("%7d  %13d  %6d  %14d  %6d%n",
+               threads, hot, hotAborts.get(), cold, coldAborts.get());
+      }
+   }
+
+   private static long run(int threads, int nblocks, AtomicLong aborts) throws InterruptedException {
+      LockTable locktbl = new LockTable();
+      BlockId[] blocks = new BlockId[nblocks];
+      for (int i = 0; i < nblocks; i++)
+         blocks[i] = new BlockId("lockbenchmark", i);
+      int perThread = OPERATIONS / threads;
+      Thread[] ts = new Thread[threads];
+      long start = System.nanoTime();
+      for (int i = 0; i < threads; i++) {
+         long seed = i;
+         ts[i] = new Thread(() -> {
+            Random rand = new Random(seed);
+            for (int j = 0; j < perThread; j++) {
+               BlockId blk = blocks[rand.nextInt(nblocks)];
+               int kind = rand.nextInt(20);
+               try {
+                  if (kind == 0)
+                     locktbl.xLock(blk);
+                  else {
+                     locktbl.sLock(blk);
+                     if (kind == 1) {
+                        try {
+                           locktbl.upgrade(blk);
+                        } catch (LockAbortException e) {
+                           locktbl.unlock(blk);
+                           throw e;
+                        }
+                     }
+                  }
+                  locktbl.unlock(blk);
+               } catch (LockAbortException e) {
+                  aborts.incrementAndGet();
+               }
+            }
+         });
+         ts[i].start();
+      }
+      for (Thread t : ts)
+         t.join();
+      long nanos = System.nanoTime() - start;
+      return (long) perThread * threads * 1_000_000_000L / nanos;
+   }
+}
@@ -1,107 +1,218 @@
 package simpledb.tx.concurrency;
 
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import simpledb.file.BlockId;
 
 /**
  * The lock table, which provides methods to lock and unlock blocks.
- * If a transaction requests a lock that causes a conflict with an
- * existing lock, then that transaction is placed on a wait list.
- * There is only one wait list for all blocks.
- * When the last lock on a block is unlocked, then all transactions
- * are removed from the wait list and rescheduled.
- * If one of those transactions discovers that the lock it is waiting for
- * is still locked, it will place itself back on the wait list.
- * 
+ * The table is divided into stripes, each guarded by its own latch,
+ * and a block belongs to the stripe given by its hash code;
+ * so transactions locking different blocks rarely contend.
+ * <p>
+ * Each locked block has its holders and a FIFO queue of the
+ * requests waiting for it. A request is granted at once only if
+ * it is compatible with the holders and nobody is queued ahead of it,
+ * so that a stream of shared locks cannot starve an exclusive one.
+ * When a lock is released, the requests at the head of the queue
+ * that have become compatible are granted and woken,
+ * each on its own condition; the others sleep on.
+ * <p>
+ * A transaction holding an SLock gets an XLock by upgrading it.
+ * An upgrade goes to the front of the queue, since its
+ * transaction already holds the block, and is granted when
+ * the other readers have left. If a second holder asks to upgrade
+ * while an upgrade is pending, neither could ever proceed,
+ * so the second is aborted at once.
+ * <p>
+ * A transaction that waits longer than a certain amount of time
+ * (currently 10 seconds) is aborted.
+ *
  * @author Edward Sciore
  */
 class LockTable {
    private static final long MAX_TIME = 10000; // 10 seconds
+   private static final int STRIPES = 64;
+   private static final int SHARED = 0, EXCLUSIVE = 1, UPGRADE = 2;
 
-   private Map<BlockId, Integer> locks = new HashMap<BlockId, Integer>();
+   private Stripe[] stripes = new Stripe[STRIPES];
+
+   LockTable() {
+      for (int i = 0; i < STRIPES; i++)
+         stripes[i] = new Stripe();
+   }
 
    /**
     * Grant an SLock on the specified block.
-    * If an XLock exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the lock is released.
-    * If the thread remains on the wait list for a certain
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * 
+    * If an XLock is held, or other requests are waiting,
+    * the calling thread waits its turn.
+    *
     * @param blk a reference to the disk block
     */
-   public synchronized void sLock(BlockId blk) {
-      try {
-         long timestamp = System.currentTimeMillis();
-         while (hasXlock(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasXlock(blk))
-            throw new LockAbortException();
-         int val = getLockVal(blk); // will not be negative
-         locks.put(blk, val + 1);
-      } catch (InterruptedException e) {
-         throw new LockAbortException();
-      }
+   public void sLock(BlockId blk) {
+      lock(blk, SHARED);
+   }
+
+   /**
+    * Grant an XLock on the specified block,
+    * to a transaction that holds no lock on it.
+    * If a lock of any type is held, or other requests are waiting,
+    * the calling thread waits its turn.
+    *
+    * @param blk a reference to the disk block
+    */
+   void xLock(BlockId blk) {
+      lock(blk, EXCLUSIVE);
+   }
+
+   /**
+    * Upgrade the caller's SLock on the specified block to an XLock,
+    * waiting until the other transactions holding an SLock release it.
+    *
+    * @param blk a reference to the disk block
+    */
+   void upgrade(BlockId blk) {
+      lock(blk, UPGRADE);
    }
 
    /**
-    * Grant an XLock on the specified block.
-    * If a lock of any type exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the locks are released.
-    * If the thread remains on the wait list for a certain
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * 
+    * Release a lock on the specified block,
+    * and wake the waiting requests that can now be granted.
+    *
     * @param blk a reference to the disk block
     */
-   synchronized void xLock(BlockId blk) {
+   void unlock(BlockId blk) {
+      Stripe stripe = stripe(blk);
+      stripe.latch.lock();
       try {
-         long timestamp = System.currentTimeMillis();
-         while (hasOtherSLocks(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasOtherSLocks(blk))
+         LockState state = stripe.states.get(blk);
+         if (state.writer)
+            state.writer = false;
+         else
+            state.readers--;
+         grantWaiters(state);
+         if (state.isFree())
+            stripe.states.remove(blk);
+      } finally {
+         stripe.latch.unlock();
+      }
+   }
+
+   private void lock(BlockId blk, int mode) {
+      Stripe stripe = stripe(blk);
+      stripe.latch.lock();
+      try {
+         LockState state = stripe.states.computeIfAbsent(blk, b -> new LockState());
+         if (mode == UPGRADE && state.upgrading)
+            throw new LockAbortException();
+         // an upgrade need not wait for the queue, which is behind it
+         if ((mode == UPGRADE || state.queue.isEmpty()) && state.canGrant(mode)) {
+            state.grant(mode);
+            return;
+         }
+         Request req = new Request(mode, stripe.latch.newCondition());
+         if (mode == UPGRADE) {
+            state.upgrading = true;
+            state.queue.addFirst(req);
+         } else
+            state.queue.addLast(req);
+         long remaining = TimeUnit.MILLISECONDS.toNanos(MAX_TIME);
+         try {
+            while (!req.granted && remaining > 0)
+               remaining = req.ready.awaitNanos(remaining);
+         } catch (InterruptedException e) {
+            // abandoned like a request that waited too long
+         }
+         if (!req.granted) {
+            state.queue.remove(req);
+            if (mode == UPGRADE)
+               state.upgrading = false;
+            grantWaiters(state);
+            if (state.isFree())
+               stripe.states.remove(blk);
             throw new LockAbortException();
-         locks.put(blk, -1);
-      } catch (InterruptedException e) {
-         throw new LockAbortException();
+         }
+      } finally {
+         stripe.latch.unlock();
       }
    }
 
    /**
-    * Release a lock on the specified block.
-    * If this lock is the last lock on that block,
-    * then the waiting transactions are notified.
-    * 
-    * @param blk a reference to the disk block
+    * Grants the requests at the head of the block's queue,
+    * in order, for as long as they are compatible with the holders.
     */
-   synchronized void unlock(BlockId blk) {
-      int val = getLockVal(blk);
-      if (val > 1)
-         locks.put(blk, val - 1);
-      else {
-         locks.remove(blk);
-         notifyAll();
+   private void grantWaiters(LockState state) {
+      Iterator<Request> iter = state.queue.iterator();
+      while (iter.hasNext()) {
+         Request req = iter.next();
+         if (!state.canGrant(req.mode))
+            break;
+         iter.remove();
+         state.grant(req.mode);
+         req.granted = true;
+         req.ready.signal();
       }
    }
 
-   private boolean hasXlock(BlockId blk) {
-      return getLockVal(blk) < 0;
+   private Stripe stripe(BlockId blk) {
+      return stripes[Math.floorMod(blk.hashCode(), STRIPES)];
    }
 
-   private boolean hasOtherSLocks(BlockId blk) {
-      return getLockVal(blk) > 1;
+   private static class Stripe {
+      ReentrantLock latch = new ReentrantLock();
+      Map<BlockId, LockState> states = new HashMap<>();
    }
 
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
+   /**
+    * The holders of a block's lock, and the requests waiting for it.
+    * An upgraded SLock counts as the writer, not as a reader.
+    */
+   private static class LockState {
+      int readers = 0;
+      boolean writer = false;
+      boolean upgrading = false;
+      ArrayDeque<Request> queue = new ArrayDeque<>();
+
+      boolean canGrant(int mode) {
+         if (mode == SHARED)
+            return !writer;
+         else if (mode == EXCLUSIVE)
+            return !writer && readers == 0;
+         else
+            return readers == 1; // the upgrader's own SLock
+      }
+
+      void grant(int mode) {
+         if (mode == SHARED)
+            readers++;
+         else if (mode == EXCLUSIVE)
+            writer = true;
+         else {
+            readers--;
+            writer = true;
+            upgrading = false;
+         }
+      }
+
+      boolean isFree() {
+         return readers == 0 && !writer && queue.isEmpty();
+      }
    }
 
-   private int getLockVal(BlockId blk) {
-      Integer ival = locks.get(blk);
-      return (ival == null) ? 0 : ival.intValue();
+   private static class Request {
+      int mode;
+      Condition ready;
+      boolean granted = false;
+
+      Request(int mode, Condition ready) {
+         this.mode = mode;
+         this.ready = ready;
+      }
    }
 }
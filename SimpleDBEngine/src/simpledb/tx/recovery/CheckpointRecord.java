@@ -1,16 +1,62 @@
 package simpledb.tx.recovery;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simpledb.file.BlockId;
 import simpledb.file.Page;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 /**
  * The CHECKPOINT log record.
- * 
+ * A checkpoint does not stop the system: it records the
+ * transactions that were active and the dirty page table,
+ * from which recovery can tell where its redo pass must start
+ * (the redo point) and which transactions it may have to undo.
+ * A log record must fit in a log page, so a checkpoint with
+ * many entries is written as several records, each pointing
+ * back to the one before; recovery reads the last of them first.
+ * The last record is flagged as such: the log may reach the disk
+ * before the checkpoint is finished, so after a crash, a checkpoint
+ * without its last record is incomplete, and recovery uses the
+ * one before it.
+ *
  * @author Edward Sciore
  */
 public class CheckpointRecord implements LogRecord {
-   public CheckpointRecord() {
+   // the largest size of the fields before the entries
+   private static final int HEADER_SIZE = Page.varLongSize(CHECKPOINT)
+         + 3 * Page.varLongSize(Long.MAX_VALUE) + 2 * Page.varLongSize(Integer.MAX_VALUE)
+         + Page.varLongSize(1);
+
+   private long prevSliceLSN, redoLSN, beginLSN;
+   private boolean lastSlice;
+   private Map<Integer, Long> activeTxs = new HashMap<>();
+   private Map<BlockId, Long> dirtyPages = new HashMap<>();
+
+   /**
+    * Create a new checkpoint log record.
+    *
+    * @param r the reader positioned after the operator
+    */
+   CheckpointRecord(LogReader r) {
+      prevSliceLSN = r.nextLong();
+      lastSlice = r.nextInt() == 1;
+      redoLSN = r.nextLong();
+      beginLSN = r.nextLong();
+      int ntxs = r.nextInt();
+      for (int i = 0; i < ntxs; i++) {
+         int txnum = r.nextInt();
+         activeTxs.put(txnum, r.nextLong());
+      }
+      int npages = r.nextInt();
+      for (int i = 0; i < npages; i++) {
+         BlockId blk = r.nextBlock();
+         dirtyPages.put(blk, r.nextLong());
+      }
    }
 
    public int op() {
@@ -25,28 +71,122 @@ public class CheckpointRecord implements LogRecord {
       return -1; // dummy value
    }
 
+   /**
+    * Returns the LSN of the previous record of the same checkpoint,
+    * or -1 if this is its first record.
+    */
+   public long prevSliceLSN() {
+      return prevSliceLSN;
+   }
+
+   /**
+    * Returns true if this is the last record of its checkpoint,
+    * whose presence in the log shows that the checkpoint is complete.
+    */
+   public boolean isLastSlice() {
+      return lastSlice;
+   }
+
+   /**
+    * Returns the LSN from which recovery must redo the log:
+    * no change below it can be missing from the disk.
+    */
+   public long redoLSN() {
+      return redoLSN;
+   }
+
+   /**
+    * Returns the end of the log when the checkpoint began.
+    * Every record above it was written after the dirty page table
+    * was taken, and so is not reflected in it.
+    */
+   public long beginLSN() {
+      return beginLSN;
+   }
+
+   /**
+    * Returns the transactions in this record that were active,
+    * each with the LSN of its last log record.
+    */
+   public Map<Integer, Long> activeTxs() {
+      return activeTxs;
+   }
+
+   /**
+    * Returns the dirty pages in this record,
+    * each with the LSN of its first unwritten change.
+    */
+   public Map<BlockId, Long> dirtyPages() {
+      return dirtyPages;
+   }
+
    /**
     * Does nothing, because a checkpoint record
     * contains no undo information.
     */
-   public void undo(Transaction tx) {
+   public long undo(Transaction tx, LogMgr lm, long lastLSN) {
+      return lastLSN;
    }
 
    public String toString() {
-      return "<CHECKPOINT>";
+      return "<CHECKPOINT " + redoLSN + " " + activeTxs + " " + dirtyPages + ">";
    }
 
    /**
-    * A static method to write a checkpoint record to the log.
-    * This log record contains the CHECKPOINT operator,
-    * and nothing else.
-    * 
-    * @return the LSN of the last log value
+    * A static method to write a checkpoint to the log.
+    * Each of its log records contains the CHECKPOINT operator,
+    * followed by the LSN of the checkpoint's previous record,
+    * 1 if it is the checkpoint's last record and 0 otherwise,
+    * the redo point, the end of the log when the checkpoint began,
+    * and then as many of the active transactions
+    * (id and last LSN) and of the dirty pages
+    * (block and first unwritten LSN) as fit,
+    * each list preceded by its length.
+    *
+    * @return the LSN of the checkpoint's last record
     */
-   public static int writeToLog(LogMgr lm) {
-      byte[] rec = new byte[Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, CHECKPOINT);
-      return lm.append(rec);
+   public static long writeToLog(LogMgr lm, long redoLSN, long beginLSN,
+         Map<Integer, Long> activeTxs, Map<BlockId, Long> dirtyPages) {
+      List<Map.Entry<Integer, Long>> txs = new ArrayList<>(activeTxs.entrySet());
+      List<Map.Entry<BlockId, Long>> pages = new ArrayList<>(dirtyPages.entrySet());
+      int max = lm.maxRecordSize();
+      long lsn = -1;
+      int t = 0, d = 0;
+      do {
+         int size = HEADER_SIZE, ntxs = 0, npages = 0;
+         while (t + ntxs < txs.size() && size + txSize(txs.get(t + ntxs)) <= max) {
+            size += txSize(txs.get(t + ntxs));
+            ntxs++;
+         }
+         if (t + ntxs == txs.size()) {
+            while (d + npages < pages.size()
+                  && size + pageSize(lm, pages.get(d + npages)) <= max) {
+               size += pageSize(lm, pages.get(d + npages));
+               npages++;
+            }
+         }
+         boolean last = t + ntxs == txs.size() && d + npages == pages.size();
+         LogWriter w = new LogWriter(lm, CHECKPOINT).putLong(lsn).putLong(last ? 1 : 0)
+               .putLong(redoLSN).putLong(beginLSN).putLong(ntxs);
+         for (Map.Entry<Integer, Long> e : txs.subList(t, t + ntxs))
+            w.putLong(e.getKey()).putLong(e.getValue());
+         w.putLong(npages);
+         for (Map.Entry<BlockId, Long> e : pages.subList(d, d + npages))
+            w.putBlock(e.getKey()).putLong(e.getValue());
+         lsn = w.append();
+         t += ntxs;
+         d += npages;
+      } while (t < txs.size() || d < pages.size());
+      return lsn;
+   }
+
+   private static int txSize(Map.Entry<Integer, Long> tx) {
+      return Page.varLongSize(tx.getKey()) + Page.varLongSize(tx.getValue());
+   }
+
+   private static int pageSize(LogMgr lm, Map.Entry<BlockId, Long> page) {
+      BlockId blk = page.getKey();
+      return Page.varLongSize(lm.fileTable().id(blk.fileName()))
+            + Page.varLongSize(blk.number()) + Page.varLongSize(page.getValue());
    }
 }
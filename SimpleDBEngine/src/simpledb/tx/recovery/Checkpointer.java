@@ -0,0 +1,97 @@
+package simpledb.tx.recovery;
+
+import java.io.UncheckedIOException;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.log.LogMgr;
+
+/**
+ * A background thread that writes a checkpoint at a fixed interval,
+ * so that both the part of the log that recovery reads and the
+ * log kept on disk stay bounded.
+ * Before each checkpoint it writes the pages that have been dirty
+ * since the previous checkpoint began, so that a page that is
+ * modified again and again does not hold the redo point back.
+ * The thread is stopped by waking it rather than interrupting it,
+ * since an interrupt during I/O would close the file's channel.
+ * A checkpoint that fails on an I/O error is reported on the
+ * standard error, counted in the log's statistics and retried
+ * in the next round; any other failure ends the thread.
+ */
+public class Checkpointer implements Runnable {
+   private LogMgr lm;
+   private BufferMgr bm;
+   private long interval;
+   private boolean stopped = false;
+   private Thread thread;
+
+   /**
+    * Creates a checkpointer for the specified database.
+    *
+    * @param lm       the log manager
+    * @param bm       the buffer manager
+    * @param interval the number of milliseconds between checkpoints
+    */
+   public Checkpointer(LogMgr lm, BufferMgr bm, long interval) {
+      this.lm = lm;
+      this.bm = bm;
+      this.interval = interval;
+   }
+
+   /**
+    * Starts the background thread.
+    */
+   public void start() {
+      thread = new Thread(this, "checkpointer");
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   /**
+    * Stops the background thread, waiting for a checkpoint
+    * in progress to finish.
+    */
+   public void stop() {
+      synchronized (this) {
+         stopped = true;
+         notifyAll();
+      }
+      try {
+         thread.join();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   public void run() {
+      long lastBegin = 0;
+      while (awaitInterval()) {
+         try {
+            bm.flushOlderThan(lastBegin);
+            lastBegin = RecoveryMgr.checkpoint(lm, bm);
+         } catch (UncheckedIOException e) {
+            lm.stats().checkpointFailed();
+            System.err.println("checkpoint failed: " + e.getMessage());
+         }
+      }
+   }
+
+   /**
+    * Waits for the interval to pass.
+    *
+    * @return false if the checkpointer was stopped meanwhile
+    */
+   private synchronized boolean awaitInterval() {
+      long deadline = System.currentTimeMillis() + interval;
+      long remaining = interval;
+      while (!stopped && remaining > 0) {
+         try {
+            wait(remaining);
+         } catch (InterruptedException e) {
+            // only stop() ends the wait early
+         }
+         remaining = deadline - System.currentTimeMillis();
+      }
+      return !stopped;
+   }
+}
@@ -1,6 +1,5 @@
 package simpledb.tx.recovery;
 
-import simpledb.file.Page;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
@@ -12,9 +11,8 @@ import simpledb.tx.Transaction;
 public class CommitRecord implements LogRecord {
    private int txnum;
 
-   public CommitRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
+   CommitRecord(LogReader r) {
+      txnum = r.nextInt();
    }
 
    public int op() {
@@ -29,7 +27,8 @@ public class CommitRecord implements LogRecord {
     * Does nothing, because a commit record
     * contains no undo information.
     */
-   public void undo(Transaction tx) {
+   public long undo(Transaction tx, LogMgr lm, long lastLSN) {
+      return lastLSN;
    }
 
    public String toString() {
@@ -43,11 +42,7 @@ public class CommitRecord implements LogRecord {
     * 
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum) {
-      byte[] rec = new byte[2 * Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, COMMIT);
-      p.setInt(Integer.BYTES, txnum);
-      return lm.append(rec);
+   public static long writeToLog(LogMgr lm, int txnum) {
+      return new LogWriter(lm, COMMIT).putLong(txnum).append();
    }
 }
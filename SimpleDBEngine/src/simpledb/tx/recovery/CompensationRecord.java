@@ -0,0 +1,204 @@
+package simpledb.tx.recovery;
+
+import static java.sql.Types.INTEGER;
+import static java.sql.Types.VARCHAR;
+
+import java.util.Arrays;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The COMPENSATION log record, which describes the undo
+ * of a SETINT, SETSTRING or SETROW record.
+ * Recovery redoes a compensation record like any other change,
+ * but never undoes it: instead, it continues the undo of the
+ * transaction at the record before the one that was compensated.
+ * So a transaction whose rollback was cut short by a crash
+ * is not undone twice.
+ * The record holds each restored Integer in full, but only the
+ * changed part of each restored String, as a SETSTRING record does:
+ * the lengths of the prefix and suffix that it shares with the value
+ * it replaces, and the middle between them. Redo rebuilds the
+ * String from the value in the page, which is then the value replaced.
+ */
+public class CompensationRecord implements LogRecord {
+   private int txnum;
+   private long prevLSN, undoNextLSN;
+   private BlockId blk;
+   private int[] offsets;
+   // each an Integer, or the middle of a String
+   private Object[] vals;
+   private int[] prefixes, suffixes;
+
+   /**
+    * Create a new compensation log record.
+    * 
+    * @param r the reader positioned after the operator
+    */
+   CompensationRecord(LogReader r) {
+      txnum = r.nextInt();
+      prevLSN = r.nextLong();
+      undoNextLSN = r.nextLong();
+      blk = r.nextBlock();
+      int n = r.nextInt();
+      offsets = new int[n];
+      vals = new Object[n];
+      prefixes = new int[n];
+      suffixes = new int[n];
+      for (int i = 0; i < n; i++) {
+         offsets[i] = r.nextInt();
+         if (r.nextInt() == INTEGER)
+            vals[i] = r.nextInt();
+         else {
+            prefixes[i] = r.nextInt();
+            suffixes[i] = r.nextInt();
+            vals[i] = r.nextString();
+         }
+      }
+   }
+
+   public int op() {
+      return COMPENSATION;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public long prevLSN() {
+      return prevLSN;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   /**
+    * Returns the LSN of the record before the compensated one,
+    * which is the next record of the transaction to undo.
+    */
+   public long undoNextLSN() {
+      return undoNextLSN;
+   }
+
+   public String toString() {
+      return "<COMPENSATION " + txnum + " " + blk + " " + Arrays.toString(offsets) + " "
+            + Arrays.toString(vals) + ">";
+   }
+
+   /**
+    * Does nothing, because a compensation record
+    * is never undone.
+    */
+   public long undo(Transaction tx, LogMgr lm, long lastLSN) {
+      return lastLSN;
+   }
+
+   /**
+    * Store the values saved in the log record,
+    * rebuilding each String from the current one.
+    */
+   public void redo(Page p) {
+      for (int i = 0; i < offsets.length; i++) {
+         if (vals[i] instanceof Integer)
+            p.setInt(offsets[i], (Integer) vals[i]);
+         else
+            p.setString(offsets[i], SetStringRecord.splice(p.getString(offsets[i]),
+                  prefixes[i], suffixes[i], (String) vals[i]));
+      }
+   }
+
+   /**
+    * A static method to write a compensation record for an integer
+    * value to the log; see the method for several values.
+    * 
+    * @return the LSN of the last log value
+    */
+   public static long writeToLog(LogMgr lm, int txnum, long prevLSN, long undoNextLSN,
+         BlockId blk, int offset, int val) {
+      return writeToLog(lm, txnum, prevLSN, undoNextLSN, blk, new int[] { offset },
+            new Object[1], new Object[] { val });
+   }
+
+   /**
+    * A static method to write a compensation record for a string
+    * value to the log; see the method for several values.
+    * 
+    * @param curval the value that the restored value replaces
+    * @return the LSN of the last log value
+    */
+   public static long writeToLog(LogMgr lm, int txnum, long prevLSN, long undoNextLSN,
+         BlockId blk, int offset, String curval, String val) {
+      return writeToLog(lm, txnum, prevLSN, undoNextLSN, blk, new int[] { offset },
+            new Object[] { curval }, new Object[] { val });
+   }
+
+   /**
+    * A static method to write a compensation record to the log.
+    * This log record contains the COMPENSATION operator,
+    * followed by the transaction id, the LSN of the
+    * transaction's previous log record, the LSN of the next
+    * record to undo, the modified block, the number of values,
+    * and then the offset and restored value of each:
+    * an integer, or the lengths of the prefix and suffix that
+    * a string shares with the value it replaces and its middle.
+    * <p>
+    * Values too large for one record are split between several,
+    * in halves; a single string too large for one record is
+    * restored in steps, through the value halfway between the
+    * current and restored ones (see {@link SetStringRecord#halfway}).
+    * Only the last of the records holds the specified
+    * undoNextLSN; the others point at the transaction's
+    * previous record, as if nothing had been compensated yet,
+    * so that if a crash leaves the undo half done,
+    * recovery undoes the original record again in full.
+    *
+    * @param curvals the values that the restored values replace;
+    *                only those of the strings are used
+    * @return the LSN of the last log value
+    */
+   public static long writeToLog(LogMgr lm, int txnum, long prevLSN, long undoNextLSN,
+         BlockId blk, int[] offsets, Object[] curvals, Object[] vals) {
+      LogWriter w = encode(lm, txnum, prevLSN, undoNextLSN, blk, offsets, curvals, vals);
+      int n = offsets.length;
+      if (w.size() <= lm.maxRecordSize())
+         return w.append();
+      if (n > 1) {
+         long lsn = writeToLog(lm, txnum, prevLSN, prevLSN, blk, Arrays.copyOfRange(offsets, 0, n / 2),
+               Arrays.copyOfRange(curvals, 0, n / 2), Arrays.copyOfRange(vals, 0, n / 2));
+         return writeToLog(lm, txnum, lsn, undoNextLSN, blk, Arrays.copyOfRange(offsets, n / 2, n),
+               Arrays.copyOfRange(curvals, n / 2, n), Arrays.copyOfRange(vals, n / 2, n));
+      }
+      if (vals[0] instanceof String) {
+         String mid = SetStringRecord.halfway((String) curvals[0], (String) vals[0]);
+         if (!mid.equals(curvals[0]) && !mid.equals(vals[0])) {
+            Object[] midvals = { mid };
+            long lsn = writeToLog(lm, txnum, prevLSN, prevLSN, blk, offsets, curvals, midvals);
+            return writeToLog(lm, txnum, lsn, undoNextLSN, blk, offsets, midvals, vals);
+         }
+      }
+      return w.append();
+   }
+
+   private static LogWriter encode(LogMgr lm, int txnum, long prevLSN, long undoNextLSN,
+         BlockId blk, int[] offsets, Object[] curvals, Object[] vals) {
+      LogWriter w = new LogWriter(lm, COMPENSATION).putLong(txnum).putLong(prevLSN)
+            .putLong(undoNextLSN).putBlock(blk).putLong(offsets.length);
+      for (int i = 0; i < offsets.length; i++) {
+         w.putLong(offsets[i]);
+         if (vals[i] instanceof Integer) {
+            w.putValue(vals[i]);
+            continue;
+         }
+         String curval = (String) curvals[i], val = (String) vals[i];
+         int prefix = SetStringRecord.commonPrefix(curval, val);
+         int suffix = SetStringRecord.commonSuffix(curval, val, prefix);
+         w.putLong(VARCHAR).putLong(prefix).putLong(suffix)
+               .putString(val.substring(prefix, val.length() - suffix));
+      }
+      return w;
+   }
+}
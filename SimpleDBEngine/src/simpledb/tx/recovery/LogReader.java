@@ -0,0 +1,73 @@
+package simpledb.tx.recovery;
+
+import static java.sql.Types.INTEGER;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.FileTable;
+
+/**
+ * Decodes the fields of a compact log record where it lies,
+ * in the log iterator's page or in a page wrapping a record
+ * read from the log. A reader is positioned at one record
+ * after another, so decoding a record's numbers allocates nothing.
+ * See {@link LogWriter} for the encoding.
+ */
+class LogReader {
+   private FileTable files;
+   private Page p;
+   private int pos;
+
+   LogReader(FileTable files) {
+      this.files = files;
+   }
+
+   /**
+    * Positions the reader at the record
+    * at the specified offset of the page.
+    */
+   LogReader reset(Page p, int pos) {
+      this.p = p;
+      this.pos = pos;
+      return this;
+   }
+
+   /**
+    * Positions the reader at the record held in the byte array.
+    */
+   LogReader reset(byte[] rec) {
+      return reset(new Page(rec), 0);
+   }
+
+   long nextLong() {
+      long n = p.getVarLong(pos);
+      pos += Page.varLongSize(n);
+      return n;
+   }
+
+   int nextInt() {
+      return (int) nextLong();
+   }
+
+   String nextString() {
+      String s = p.getVarString(pos);
+      pos += Page.varStringSize(s);
+      return s;
+   }
+
+   BlockId nextBlock() {
+      String filename = files.name(nextInt());
+      return new BlockId(filename, nextInt());
+   }
+
+   /**
+    * Reads a value written by {@link LogWriter#putValue(Object)},
+    * an Integer or a String.
+    */
+   Object nextValue() {
+      if (nextInt() == INTEGER)
+         return nextInt();
+      else
+         return nextString();
+   }
+}
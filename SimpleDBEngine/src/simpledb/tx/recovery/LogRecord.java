@@ -1,6 +1,8 @@
 package simpledb.tx.recovery;
 
+import simpledb.file.BlockId;
 import simpledb.file.Page;
+import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 /**
@@ -11,7 +13,7 @@ import simpledb.tx.Transaction;
 public interface LogRecord {
    static final int CHECKPOINT = 0, START = 1,
          COMMIT = 2, ROLLBACK = 3,
-         SETINT = 4, SETSTRING = 5;
+         SETINT = 4, SETSTRING = 5, COMPENSATION = 6, SETROW = 7;
 
    /**
     * Returns the log record's type.
@@ -29,37 +31,103 @@ public interface LogRecord {
    int txNumber();
 
    /**
-    * Undoes the operation encoded by this log record.
+    * Returns the LSN of the transaction's previous log record,
+    * or -1 if the record is not part of a transaction's undo chain.
+    * The SETINT, SETSTRING, SETROW and COMPENSATION records point back to the
+    * transaction's previous record, or to its START record.
+    * 
+    * @return the LSN of the transaction's previous record
+    */
+   default long prevLSN() {
+      return -1;
+   }
+
+   /**
+    * Returns the block changed by the log record,
+    * or null if the record does not change a block.
+    * 
+    * @return the block changed by the record
+    */
+   default BlockId block() {
+      return null;
+   }
+
+   /**
+    * Returns the LSN of the transaction's next record to undo,
+    * once this record has been undone.
+    * That is the previous record, except for a compensation record,
+    * whose undo has already been done.
+    * 
+    * @return the LSN of the next record to undo
+    */
+   default long undoNextLSN() {
+      return prevLSN();
+   }
+
+   /**
+    * Undoes the operation encoded by this log record,
+    * writing a compensation record that describes the undo.
     * The only log record types for which this method
-    * does anything interesting are SETINT and SETSTRING.
+    * does anything interesting are SETINT, SETSTRING and SETROW.
     * 
-    * @param txnum the id of the transaction that is performing the undo.
+    * @param tx      the transaction that is performing the undo
+    * @param lm      the log manager
+    * @param lastLSN the LSN of the last log record of the record's transaction
+    * @return the LSN of the compensation record,
+    *         or lastLSN if nothing was undone
     */
-   void undo(Transaction tx);
+   long undo(Transaction tx, LogMgr lm, long lastLSN);
+
+   /**
+    * Redoes the operation encoded by this log record
+    * on the page holding the record's block.
+    * The caller pins the block, checks that the page LSN
+    * shows the change to be missing, and then sets the page LSN.
+    * The only log record types for which this method
+    * does anything are SETINT, SETSTRING, SETROW and COMPENSATION.
+    * 
+    * @param p the page holding the record's block
+    */
+   default void redo(Page p) {
+   }
 
    /**
     * Interpret the bytes returned by the log iterator.
     * 
-    * @param bytes
-    * @return
+    * @param bytes the bytes of a log record
+    * @param lm    the log manager, whose file table names the record's file
+    * @return the log record
+    */
+   static LogRecord createLogRecord(byte[] bytes, LogMgr lm) {
+      return createLogRecord(new LogReader(lm.fileTable()).reset(bytes));
+   }
+
+   /**
+    * Interpret the log record at which the reader is positioned.
+    * 
+    * @param r the reader
+    * @return the log record
     */
-   static LogRecord createLogRecord(byte[] bytes) {
-      Page p = new Page(bytes);
-      switch (p.getInt(0)) {
+   static LogRecord createLogRecord(LogReader r) {
+      switch (r.nextInt()) {
          case CHECKPOINT:
-            return new CheckpointRecord();
+            return new CheckpointRecord(r);
          case START:
-            return new StartRecord(p);
+            return new StartRecord(r);
          case COMMIT:
-            return new CommitRecord(p);
+            return new CommitRecord(r);
          case ROLLBACK:
-            return new RollbackRecord(p);
+            return new RollbackRecord(r);
          case SETINT:
-            return new SetIntRecord(p);
+            return new SetIntRecord(r);
          case SETSTRING:
-            return new SetStringRecord(p);
+            return new SetStringRecord(r);
+         case SETROW:
+            return new SetRowRecord(r);
+         case COMPENSATION:
+            return new CompensationRecord(r);
          default:
             return null;
       }
    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package simpledb.tx.recovery;
+
+import static java.sql.Types.INTEGER;
+import static java.sql.Types.VARCHAR;
+
+import java.util.Arrays;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+
+/**
+ * Encodes the fields of a compact log record and appends it to the log.
+ * Every number, including the record's operator, is stored in
+ * Page's variable-length format, so that the small numbers that
+ * make up most of a record take a byte or two each;
+ * a block is stored as the number that the log's file table
+ * gives its file, followed by the block number.
+ */
+class LogWriter {
+   private LogMgr lm;
+   private byte[] buf = new byte[64];
+   private Page p = new Page(buf);
+   private int pos = 0;
+
+   /**
+    * Starts a record with the specified operator.
+    */
+   LogWriter(LogMgr lm, int op) {
+      this.lm = lm;
+      putLong(op);
+   }
+
+   LogWriter putLong(long n) {
+      int size = Page.varLongSize(n);
+      ensure(size);
+      p.setVarLong(pos, n);
+      pos += size;
+      return this;
+   }
+
+   LogWriter putString(String s) {
+      int size = Page.varStringSize(s);
+      ensure(size);
+      p.setVarString(pos, s);
+      pos += size;
+      return this;
+   }
+
+   LogWriter putBlock(BlockId blk) {
+      putLong(lm.fileTable().id(blk.fileName()));
+      return putLong(blk.number());
+   }
+
+   /**
+    * Writes an Integer or a String, preceded by its type.
+    */
+   LogWriter putValue(Object val) {
+      if (val instanceof Integer)
+         return putLong(INTEGER).putLong((Integer) val);
+      else
+         return putLong(VARCHAR).putString((String) val);
+   }
+
+   /**
+    * Returns the size of the record encoded so far,
+    * to be compared with the log's maximum record size.
+    */
+   int size() {
+      return pos;
+   }
+
+   /**
+    * Appends the record to the log.
+    *
+    * @return the LSN of the record
+    */
+   long append() {
+      return lm.append(Arrays.copyOf(buf, pos));
+   }
+
+   private void ensure(int size) {
+      if (pos + size > buf.length) {
+         buf = Arrays.copyOf(buf, Math.max(2 * buf.length, pos + size));
+         p = new Page(buf);
+      }
+   }
+}
@@ -5,26 +5,71 @@ import static simpledb.tx.recovery.LogRecord.COMMIT;
 import static simpledb.tx.recovery.LogRecord.ROLLBACK;
 import static simpledb.tx.recovery.LogRecord.START;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import simpledb.buffer.Buffer;
 import simpledb.buffer.BufferMgr;
 import simpledb.file.BlockId;
+import simpledb.log.LogIterator;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 /**
  * The recovery manager. Each transaction has its own recovery manager.
+ * Each update record points back to the transaction's previous record,
+ * so that a rollback reads only the transaction's own records.
+ * The most recent update records are also kept in memory,
+ * so that rolling back a short transaction reads no log at all.
+ * <p>
+ * Update records hold both the old and the new value, so a
+ * modified page may be written before its transaction commits
+ * (steal), and need not be written when it commits (no-force):
+ * a commit costs one log flush. Recovery repeats history from
+ * the last checkpoint, using the page LSNs to skip changes that
+ * reached the disk, and then undoes the unfinished transactions.
+ * The redo pass can be spread over several threads, since the
+ * changes to one block depend on nothing but the block itself.
+ * Every undo is logged as a compensation record, so that it
+ * is itself redone after a crash.
+ * <p>
+ * Checkpoints are fuzzy: {@link #checkpoint(LogMgr, BufferMgr)}
+ * records the active transactions and the dirty pages without
+ * waiting for transactions to finish, and then lets the log
+ * manager delete the log segments that recovery no longer needs.
  * 
  * @author Edward Sciore
  */
 public class RecoveryMgr {
+   private static final int UNDO_BUFFER_SIZE = 32;
+   // the recovery managers of the active transactions, by transaction id
+   private static Map<Integer, RecoveryMgr> activeTxs = new ConcurrentHashMap<>();
+   // held shared while a transaction starts or finishes, and exclusively
+   // while a checkpoint takes the active transactions and the end of the log
+   private static ReadWriteLock txLock = new ReentrantReadWriteLock();
+
    private LogMgr lm;
    private BufferMgr bm;
    private Transaction tx;
    private int txnum;
+   private long startLSN;
+   private volatile long lastLSN;
+   // the transaction's most recent update records, oldest first
+   private Deque<LogRecord> undoBuffer = new ArrayDeque<>();
 
    /**
     * Create a recovery manager for the specified transaction.
@@ -36,16 +81,38 @@ public class RecoveryMgr {
       this.txnum = txnum;
       this.lm = lm;
       this.bm = bm;
-      StartRecord.writeToLog(lm, txnum);
+      txLock.readLock().lock();
+      try {
+         startLSN = StartRecord.writeToLog(lm, txnum);
+         lastLSN = startLSN;
+         activeTxs.put(txnum, this);
+      } finally {
+         txLock.readLock().unlock();
+      }
    }
 
    /**
     * Write a commit record to the log, and flushes it to disk.
+    * The transaction's modified pages stay in the buffer pool,
+    * except those holding changes that were not logged.
+    * 
+    * @param async true if the method should return without waiting
+    *              for the record to reach the disk
     */
-   public void commit() {
-      bm.flushAll(txnum);
-      int lsn = CommitRecord.writeToLog(lm, txnum);
-      lm.flush(lsn);
+   public void commit(boolean async) {
+      bm.flushUnlogged(txnum);
+      long lsn;
+      txLock.readLock().lock();
+      try {
+         lsn = CommitRecord.writeToLog(lm, txnum);
+         activeTxs.remove(txnum);
+      } finally {
+         txLock.readLock().unlock();
+      }
+      if (async)
+         lm.flushAsync(lsn);
+      else
+         lm.flushCommit(lsn);
    }
 
    /**
@@ -54,19 +121,69 @@ public class RecoveryMgr {
    public void rollback() {
       doRollback();
       bm.flushAll(txnum);
-      int lsn = RollbackRecord.writeToLog(lm, txnum);
-      lm.flush(lsn);
+      long lsn;
+      txLock.readLock().lock();
+      try {
+         lsn = RollbackRecord.writeToLog(lm, txnum);
+         activeTxs.remove(txnum);
+      } finally {
+         txLock.readLock().unlock();
+      }
+      lm.flushCommit(lsn);
    }
 
    /**
     * Recover uncompleted transactions from the log
-    * and then write a quiescent checkpoint record to the log and flush it.
+    * and then write a checkpoint to the log.
+    * All dirty pages are written first, so that a later recovery
+    * need not redo anything before the checkpoint.
+    * 
+    * @param threads the number of threads that redo the log
     */
-   public void recover() {
-      doRecover();
-      bm.flushAll(txnum);
-      int lsn = CheckpointRecord.writeToLog(lm);
+   public void recover(int threads) {
+      doRecover(threads);
+      bm.flushAll();
+      checkpoint(lm, bm);
+   }
+
+   /**
+    * Write a fuzzy checkpoint to the log and flush it,
+    * and then delete the log segments that are no longer needed.
+    * New transactions wait only while the active ones are listed;
+    * the dirty page table is then taken from the buffer pool,
+    * and the redo point is the earliest of its LSNs and the end
+    * of the log when the checkpoint began.
+    * The log is kept back to the redo point, or to the START
+    * record of the oldest active transaction, if earlier,
+    * so that the transaction can still roll back.
+    * 
+    * @param lm the log manager
+    * @param bm the buffer manager
+    * @return the LSN at which the checkpoint began
+    */
+   public static long checkpoint(LogMgr lm, BufferMgr bm) {
+      Map<Integer, Long> active = new HashMap<>();
+      long beginLSN, oldestStart = Long.MAX_VALUE;
+      txLock.writeLock().lock();
+      try {
+         beginLSN = lm.endLSN();
+         for (RecoveryMgr mgr : activeTxs.values()) {
+            if (mgr.lm == lm) {
+               active.put(mgr.txnum, mgr.lastLSN);
+               oldestStart = Math.min(oldestStart, mgr.startLSN);
+            }
+         }
+      } finally {
+         txLock.writeLock().unlock();
+      }
+      Map<BlockId, Long> dirtyPages = bm.dirtyPages();
+      long redoLSN = beginLSN;
+      for (long reclsn : dirtyPages.values())
+         redoLSN = Math.min(redoLSN, reclsn);
+      long lsn = CheckpointRecord.writeToLog(lm, redoLSN, beginLSN, active, dirtyPages);
       lm.flush(lsn);
+      lm.truncate(Math.min(redoLSN, oldestStart));
+      return beginLSN;
    }
 
    /**
@@ -76,10 +193,12 @@ public class RecoveryMgr {
     * @param offset the offset of the value in the page
     * @param newval the value to be written
     */
-   public int setInt(Buffer buff, int offset, int newval) {
+   public long setInt(Buffer buff, int offset, int newval) {
       int oldval = buff.contents().getInt(offset);
       BlockId blk = buff.block();
-      return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      remember(new SetIntRecord(txnum, lastLSN, blk, offset, oldval, newval));
+      lastLSN = SetIntRecord.writeToLog(lm, txnum, lastLSN, blk, offset, oldval, newval);
+      return lastLSN;
    }
 
    /**
@@ -89,52 +208,268 @@ public class RecoveryMgr {
     * @param offset the offset of the value in the page
     * @param newval the value to be written
     */
-   public int setString(Buffer buff, int offset, String newval) {
+   public long setString(Buffer buff, int offset, String newval) {
       String oldval = buff.contents().getString(offset);
-      BlockId blk = buff.block();
-      return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      logString(buff.block(), offset, oldval, newval);
+      return lastLSN;
+   }
+
+   /**
+    * Writes the setstring record for a change, or if the record
+    * would not fit in a log page, the records for the change to a
+    * value halfway between the old and new values and for the
+    * change from it; see {@link SetStringRecord#halfway}.
+    */
+   private void logString(BlockId blk, int offset, String oldval, String newval) {
+      LogWriter w = SetStringRecord.encode(lm, txnum, lastLSN, blk, offset, oldval, newval);
+      String mid = SetStringRecord.halfway(oldval, newval);
+      if (w.size() > lm.maxRecordSize() && !mid.equals(oldval) && !mid.equals(newval)) {
+         logString(blk, offset, oldval, mid);
+         logString(blk, offset, mid, newval);
+         return;
+      }
+      remember(new SetStringRecord(txnum, lastLSN, blk, offset, oldval, newval));
+      lastLSN = w.append();
+   }
+
+   /**
+    * Write a setrow record to the log and return its lsn.
+    * The record holds the current value of each field,
+    * read with the type of its new value.
+    * A row too large for one record is logged as several,
+    * each for part of its fields.
+    * 
+    * @param buff    the buffer containing the page
+    * @param offsets the offsets of the values in the page
+    * @param newvals the values to be written, each an Integer or a String
+    */
+   public long setRow(Buffer buff, int[] offsets, Object[] newvals) {
+      Object[] oldvals = new Object[offsets.length];
+      for (int i = 0; i < offsets.length; i++) {
+         if (newvals[i] instanceof Integer)
+            oldvals[i] = buff.contents().getInt(offsets[i]);
+         else
+            oldvals[i] = buff.contents().getString(offsets[i]);
+      }
+      logRow(buff.block(), offsets, oldvals, newvals);
+      return lastLSN;
+   }
+
+   /**
+    * Writes the setrow record for the specified fields, or if the
+    * record would not fit in a log page, the records for each half
+    * of them. A single string too large for a setrow record is
+    * logged as a setstring record, which holds only its changed part.
+    */
+   private void logRow(BlockId blk, int[] offsets, Object[] oldvals, Object[] newvals) {
+      LogWriter w = SetRowRecord.encode(lm, txnum, lastLSN, blk, offsets, oldvals, newvals);
+      int n = offsets.length;
+      if (w.size() > lm.maxRecordSize()) {
+         if (n > 1) {
+            logRow(blk, Arrays.copyOfRange(offsets, 0, n / 2),
+                  Arrays.copyOfRange(oldvals, 0, n / 2), Arrays.copyOfRange(newvals, 0, n / 2));
+            logRow(blk, Arrays.copyOfRange(offsets, n / 2, n),
+                  Arrays.copyOfRange(oldvals, n / 2, n), Arrays.copyOfRange(newvals, n / 2, n));
+            return;
+         }
+         if (newvals[0] instanceof String) {
+            logString(blk, offsets[0], (String) oldvals[0], (String) newvals[0]);
+            return;
+         }
+      }
+      remember(new SetRowRecord(txnum, lastLSN, blk, offsets, oldvals, newvals));
+      lastLSN = w.append();
+   }
+
+   /**
+    * Keeps an update record in the undo buffer,
+    * dropping the oldest one if the buffer is full.
+    */
+   private void remember(LogRecord rec) {
+      if (undoBuffer.size() == UNDO_BUFFER_SIZE)
+         undoBuffer.removeFirst();
+      undoBuffer.addLast(rec);
    }
 
    /**
-    * Rollback the transaction, by iterating
-    * through the log records until it finds
-    * the transaction's START record,
-    * calling undo() for each of the transaction's
-    * log records.
+    * Rollback the transaction, by following the chain
+    * of its log records back to its START record,
+    * calling undo() for each of them.
+    * The records still in the undo buffer are not read from the log.
     */
    private void doRollback() {
-      Iterator<byte[]> iter = lm.iterator();
+      long lsn = lastLSN;
+      while (!undoBuffer.isEmpty()) {
+         LogRecord rec = undoBuffer.removeLast();
+         lastLSN = rec.undo(tx, lm, lastLSN);
+         lsn = rec.undoNextLSN();
+      }
+      while (lsn != startLSN) {
+         LogRecord rec = LogRecord.createLogRecord(lm.read(lsn), lm);
+         lastLSN = rec.undo(tx, lm, lastLSN);
+         lsn = rec.undoNextLSN();
+      }
+   }
+
+   /**
+    * Do a complete database recovery, in three passes.
+    * The analysis pass reads the log backwards, keeping the update records
+    * and noting the transactions that did not finish, as far as
+    * the redo point of the last complete checkpoint (or the start of the log);
+    * the records of a checkpoint that a crash cut short are skipped.
+    * It decodes each record in the iterator's page, and creates
+    * an object only for the records that it keeps.
+    * The transactions that the checkpoint lists as active
+    * are unfinished too, unless their COMMIT or ROLLBACK was seen.
+    * The redo pass groups the records by block, skipping a record
+    * written before the checkpoint began if its page was not then dirty,
+    * or was dirtied after it; see {@link #redo(Map, Map, int)}.
+    * The undo pass then undoes the unfinished transactions
+    * together, always taking the latest record still to be undone,
+    * and writes a ROLLBACK record for each one that reaches its START.
+    */
+   private void doRecover(int threads) {
+      TreeMap<Long, LogRecord> history = new TreeMap<>();
+      Set<Long> startLSNs = new HashSet<>();
+      Set<Integer> finishedTxs = new HashSet<>();
+      // the LSN of the last record of each unfinished transaction
+      Map<Integer, Long> losers = new HashMap<>();
+      CheckpointRecord checkpoint = null;
+      Map<Integer, Long> checkpointTxs = new HashMap<>();
+      Map<BlockId, Long> dirtyPages = new HashMap<>();
+      LogIterator iter = lm.iterator();
+      LogReader reader = new LogReader(lm.fileTable());
       while (iter.hasNext()) {
-         byte[] bytes = iter.next();
-         LogRecord rec = LogRecord.createLogRecord(bytes);
-         if (rec.txNumber() == txnum) {
-            if (rec.op() == START)
-               return;
-            rec.undo(tx);
+         iter.advance();
+         if (checkpoint != null && iter.lsn() < checkpoint.redoLSN())
+            break;
+         reader.reset(iter.page(), iter.recordOffset());
+         int op = reader.nextInt();
+         if (op == CHECKPOINT) {
+            if (checkpoint == null) {
+               reader.reset(iter.page(), iter.recordOffset());
+               CheckpointRecord last = (CheckpointRecord) LogRecord.createLogRecord(reader);
+               if (last.isLastSlice()) {
+                  checkpoint = last;
+                  for (CheckpointRecord slice = last; slice != null; slice = previousSlice(slice)) {
+                     checkpointTxs.putAll(slice.activeTxs());
+                     dirtyPages.putAll(slice.dirtyPages());
+                  }
+               }
+            }
+            continue;
          }
+         int t;
+         if (op == START || op == COMMIT || op == ROLLBACK) {
+            t = reader.nextInt();
+            if (op == START)
+               startLSNs.add(iter.lsn());
+         } else {
+            reader.reset(iter.page(), iter.recordOffset());
+            LogRecord rec = LogRecord.createLogRecord(reader);
+            history.put(iter.lsn(), rec);
+            t = rec.txNumber();
+         }
+         if (op == COMMIT || op == ROLLBACK)
+            finishedTxs.add(t);
+         else if (!finishedTxs.contains(t))
+            losers.putIfAbsent(t, iter.lsn());
+      }
+      for (Map.Entry<Integer, Long> e : checkpointTxs.entrySet())
+         if (!finishedTxs.contains(e.getKey()))
+            losers.merge(e.getKey(), e.getValue(), Math::max);
+      losers.remove(txnum); // the recovering transaction itself
+
+      Map<BlockId, List<Long>> redoLSNs = new LinkedHashMap<>();
+      for (Map.Entry<Long, LogRecord> e : history.entrySet()) {
+         long lsn = e.getKey();
+         BlockId blk = e.getValue().block();
+         if (checkpoint == null || lsn > checkpoint.beginLSN()
+               || lsn >= dirtyPages.getOrDefault(blk, Long.MAX_VALUE))
+            redoLSNs.computeIfAbsent(blk, b -> new ArrayList<>()).add(lsn);
+      }
+      redo(history, redoLSNs, threads);
+
+      TreeMap<Long, Integer> toUndo = new TreeMap<>();
+      for (Map.Entry<Integer, Long> e : losers.entrySet())
+         toUndo.put(e.getValue(), e.getKey());
+      while (!toUndo.isEmpty()) {
+         Map.Entry<Long, Integer> e = toUndo.pollLastEntry();
+         int t = e.getValue();
+         LogRecord rec = history.get(e.getKey());
+         if (rec == null && !startLSNs.contains(e.getKey()))
+            rec = LogRecord.createLogRecord(lm.read(e.getKey()), lm);
+         if (rec == null || rec.op() == START) {
+            RollbackRecord.writeToLog(lm, t);
+            continue;
+         }
+         losers.put(t, rec.undo(tx, lm, losers.get(t)));
+         toUndo.put(rec.undoNextLSN(), t);
       }
    }
 
    /**
-    * Do a complete database recovery.
-    * The method iterates through the log records.
-    * Whenever it finds a log record for an unfinished
-    * transaction, it calls undo() on that record.
-    * The method stops when it encounters a CHECKPOINT record
-    * or the end of the log.
+    * Redoes the specified records, given by block.
+    * The blocks are divided among the threads by their hash code,
+    * and each thread redoes the records of its blocks, a block at a time,
+    * on a fork-join pool; with one thread, the caller does the work.
+    * Each block is pinned once, and only the buffer manager is used,
+    * since the recovering transaction's buffers and locks are not
+    * to be shared between threads; no other transaction
+    * runs during recovery.
+    * The threads are limited to the number of available buffers.
     */
-   private void doRecover() {
-      Collection<Integer> finishedTxs = new ArrayList<>();
-      Iterator<byte[]> iter = lm.iterator();
-      while (iter.hasNext()) {
-         byte[] bytes = iter.next();
-         LogRecord rec = LogRecord.createLogRecord(bytes);
-         if (rec.op() == CHECKPOINT)
-            return;
-         if (rec.op() == COMMIT || rec.op() == ROLLBACK)
-            finishedTxs.add(rec.txNumber());
-         else if (!finishedTxs.contains(rec.txNumber()))
-            rec.undo(tx);
+   private void redo(Map<Long, LogRecord> history, Map<BlockId, List<Long>> redoLSNs, int threads) {
+      threads = Math.max(1, Math.min(threads, bm.available()));
+      if (threads == 1) {
+         for (Map.Entry<BlockId, List<Long>> e : redoLSNs.entrySet())
+            redoBlock(history, e.getKey(), e.getValue());
+         return;
+      }
+      List<List<BlockId>> partitions = new ArrayList<>();
+      for (int i = 0; i < threads; i++)
+         partitions.add(new ArrayList<>());
+      for (BlockId blk : redoLSNs.keySet())
+         partitions.get(Math.floorMod(blk.hashCode(), threads)).add(blk);
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+         List<ForkJoinTask<?>> tasks = new ArrayList<>();
+         for (List<BlockId> partition : partitions) {
+            tasks.add(pool.submit(() -> {
+               for (BlockId blk : partition)
+                  redoBlock(history, blk, redoLSNs.get(blk));
+            }));
+         }
+         for (ForkJoinTask<?> task : tasks)
+            task.join();
+      } finally {
+         pool.shutdown();
       }
    }
+
+   /**
+    * Redoes the records of a block in log order, skipping those
+    * that the page LSN shows to be on the page already.
+    */
+   private void redoBlock(Map<Long, LogRecord> history, BlockId blk, List<Long> lsns) {
+      Buffer buff = bm.pin(blk);
+      try {
+         for (long lsn : lsns) {
+            synchronized (buff) {
+               if (buff.pageLSN() < lsn) {
+                  history.get(lsn).redo(buff.contents());
+                  buff.setModified(txnum, lsn);
+               }
+            }
+         }
+      } finally {
+         bm.unpin(buff);
+      }
+   }
+
+   private CheckpointRecord previousSlice(CheckpointRecord slice) {
+      if (slice.prevSliceLSN() < 0)
+         return null;
+      return (CheckpointRecord) LogRecord.createLogRecord(lm.read(slice.prevSliceLSN()), lm);
+   }
 }
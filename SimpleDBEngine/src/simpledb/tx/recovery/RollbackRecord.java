@@ -1,6 +1,5 @@
 package simpledb.tx.recovery;
 
-import simpledb.file.Page;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
@@ -15,11 +14,10 @@ public class RollbackRecord implements LogRecord {
    /**
     * Create a RollbackRecord object.
     * 
-    * @param txnum the ID of the specified transaction
+    * @param r the reader positioned after the operator
     */
-   public RollbackRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
+   RollbackRecord(LogReader r) {
+      txnum = r.nextInt();
    }
 
    public int op() {
@@ -34,7 +32,8 @@ public class RollbackRecord implements LogRecord {
     * Does nothing, because a rollback record
     * contains no undo information.
     */
-   public void undo(Transaction tx) {
+   public long undo(Transaction tx, LogMgr lm, long lastLSN) {
+      return lastLSN;
    }
 
    public String toString() {
@@ -48,11 +47,7 @@ public class RollbackRecord implements LogRecord {
     * 
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum) {
-      byte[] rec = new byte[2 * Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, ROLLBACK);
-      p.setInt(Integer.BYTES, txnum);
-      return lm.append(rec);
+   public static long writeToLog(LogMgr lm, int txnum) {
+      return new LogWriter(lm, ROLLBACK).putLong(txnum).append();
    }
 }
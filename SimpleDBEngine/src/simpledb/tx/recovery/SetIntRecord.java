@@ -6,26 +6,35 @@ import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 public class SetIntRecord implements LogRecord {
-   private int txnum, offset, val;
+   private int txnum, offset, oldval, newval;
+   private long prevLSN;
    private BlockId blk;
 
    /**
     * Create a new setint log record.
     * 
-    * @param bb the bytebuffer containing the log values
+    * @param r the reader positioned after the operator
     */
-   public SetIntRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
-      int fpos = tpos + Integer.BYTES;
-      String filename = p.getString(fpos);
-      int bpos = fpos + Page.maxLength(filename.length());
-      int blknum = p.getInt(bpos);
-      blk = new BlockId(filename, blknum);
-      int opos = bpos + Integer.BYTES;
-      offset = p.getInt(opos);
-      int vpos = opos + Integer.BYTES;
-      val = p.getInt(vpos);
+   SetIntRecord(LogReader r) {
+      txnum = r.nextInt();
+      prevLSN = r.nextLong();
+      blk = r.nextBlock();
+      offset = r.nextInt();
+      oldval = r.nextInt();
+      newval = r.nextInt();
+   }
+
+   /**
+    * Create a setint log record from its values,
+    * as it would be read from the log.
+    */
+   SetIntRecord(int txnum, long prevLSN, BlockId blk, int offset, int oldval, int newval) {
+      this.txnum = txnum;
+      this.prevLSN = prevLSN;
+      this.blk = blk;
+      this.offset = offset;
+      this.oldval = oldval;
+      this.newval = newval;
    }
 
    public int op() {
@@ -36,47 +45,56 @@ public class SetIntRecord implements LogRecord {
       return txnum;
    }
 
+   public long prevLSN() {
+      return prevLSN;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
-      return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + ">";
+      return "<SETINT " + txnum + " " + blk + " " + offset + " " + oldval + " " + newval + ">";
    }
 
    /**
-    * Replace the specified data value with the value saved in the log record.
-    * The method pins a buffer to the specified block,
-    * calls setInt to restore the saved value,
-    * and unpins the buffer.
+    * Replace the specified data value with the old value saved in the log record.
+    * The method pins a buffer to the specified block and
+    * calls applyInt to write a compensation record for the change
+    * and restore the saved value. It then unpins the buffer.
     * 
-    * @see simpledb.tx.recovery.LogRecord#undo(int)
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction, LogMgr, long)
     */
-   public void undo(Transaction tx) {
+   public long undo(Transaction tx, LogMgr lm, long lastLSN) {
       tx.pin(blk);
-      tx.setInt(blk, offset, val, false); // don't log the undo!
+      long lsn = tx.applyInt(blk, offset, oldval,
+            () -> CompensationRecord.writeToLog(lm, txnum, lastLSN, prevLSN, blk, offset, oldval));
       tx.unpin(blk);
+      return lsn;
+   }
+
+   /**
+    * Store the new value saved in the log record.
+    * 
+    * @see simpledb.tx.recovery.LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      p.setInt(offset, newval);
    }
 
    /**
     * A static method to write a setInt record to the log.
     * This log record contains the SETINT operator,
-    * followed by the transaction id, the filename, number,
-    * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * followed by the transaction id, the LSN of the
+    * transaction's previous log record, the modified block,
+    * the offset in the block, and the previous
+    * and new integer values at that offset.
     * 
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val) {
-      int tpos = Integer.BYTES;
-      int fpos = tpos + Integer.BYTES;
-      int bpos = fpos + Page.maxLength(blk.fileName().length());
-      int opos = bpos + Integer.BYTES;
-      int vpos = opos + Integer.BYTES;
-      byte[] rec = new byte[vpos + Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, SETINT);
-      p.setInt(tpos, txnum);
-      p.setString(fpos, blk.fileName());
-      p.setInt(bpos, blk.number());
-      p.setInt(opos, offset);
-      p.setInt(vpos, val);
-      return lm.append(rec);
+   public static long writeToLog(LogMgr lm, int txnum, long prevLSN, BlockId blk, int offset,
+         int oldval, int newval) {
+      return new LogWriter(lm, SETINT).putLong(txnum).putLong(prevLSN).putBlock(blk)
+            .putLong(offset).putLong(oldval).putLong(newval).append();
    }
 }
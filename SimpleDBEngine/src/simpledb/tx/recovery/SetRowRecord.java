@@ -0,0 +1,149 @@
+package simpledb.tx.recovery;
+
+import java.util.Arrays;
+
+import simpledb.file.BlockId;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The SETROW log record, which describes a change to several
+ * values of a block at once, such as the fields of a new record.
+ * One record, with one header, takes the place of a SETINT or
+ * SETSTRING record per field; each value is an Integer or a String.
+ */
+public class SetRowRecord implements LogRecord {
+   private int txnum;
+   private long prevLSN;
+   private BlockId blk;
+   private int[] offsets;
+   private Object[] oldvals, newvals;
+
+   /**
+    * Create a new setrow log record.
+    * 
+    * @param r the reader positioned after the operator
+    */
+   SetRowRecord(LogReader r) {
+      txnum = r.nextInt();
+      prevLSN = r.nextLong();
+      blk = r.nextBlock();
+      int n = r.nextInt();
+      offsets = new int[n];
+      oldvals = new Object[n];
+      newvals = new Object[n];
+      for (int i = 0; i < n; i++) {
+         offsets[i] = r.nextInt();
+         oldvals[i] = r.nextValue();
+         newvals[i] = r.nextValue();
+      }
+   }
+
+   /**
+    * Create a setrow log record from its values,
+    * as it would be read from the log.
+    */
+   SetRowRecord(int txnum, long prevLSN, BlockId blk, int[] offsets, Object[] oldvals, Object[] newvals) {
+      this.txnum = txnum;
+      this.prevLSN = prevLSN;
+      this.blk = blk;
+      this.offsets = offsets;
+      this.oldvals = oldvals;
+      this.newvals = newvals;
+   }
+
+   public int op() {
+      return SETROW;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public long prevLSN() {
+      return prevLSN;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<SETROW " + txnum + " " + blk + " " + Arrays.toString(offsets) + " "
+            + Arrays.toString(oldvals) + " " + Arrays.toString(newvals) + ">";
+   }
+
+   /**
+    * Restore the old values saved in the log record.
+    * The method pins a buffer to the specified block, reads the
+    * current values, and calls applyRow to write a compensation
+    * record for the change and restore the saved values.
+    * It then unpins the buffer.
+    * 
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction, LogMgr, long)
+    */
+   public long undo(Transaction tx, LogMgr lm, long lastLSN) {
+      tx.pin(blk);
+      Object[] curvals = new Object[offsets.length];
+      for (int i = 0; i < offsets.length; i++) {
+         if (oldvals[i] instanceof Integer)
+            curvals[i] = tx.getInt(blk, offsets[i]);
+         else
+            curvals[i] = tx.getString(blk, offsets[i]);
+      }
+      long lsn = tx.applyRow(blk, offsets, oldvals,
+            () -> CompensationRecord.writeToLog(lm, txnum, lastLSN, prevLSN, blk, offsets, curvals, oldvals));
+      tx.unpin(blk);
+      return lsn;
+   }
+
+   /**
+    * Store the new values saved in the log record.
+    * 
+    * @see simpledb.tx.recovery.LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      store(p, offsets, newvals);
+   }
+
+   /**
+    * Stores each value, an Integer or a String, at its offset in the page.
+    */
+   static void store(Page p, int[] offsets, Object[] vals) {
+      for (int i = 0; i < offsets.length; i++) {
+         if (vals[i] instanceof Integer)
+            p.setInt(offsets[i], (Integer) vals[i]);
+         else
+            p.setString(offsets[i], (String) vals[i]);
+      }
+   }
+
+   /**
+    * A static method to write a setrow record to the log.
+    * This log record contains the SETROW operator,
+    * followed by the transaction id, the LSN of the
+    * transaction's previous log record, the modified block,
+    * the number of values, and then the offset, previous value
+    * and new value of each.
+    * 
+    * @return the LSN of the last log value
+    */
+   public static long writeToLog(LogMgr lm, int txnum, long prevLSN, BlockId blk, int[] offsets,
+         Object[] oldvals, Object[] newvals) {
+      return encode(lm, txnum, prevLSN, blk, offsets, oldvals, newvals).append();
+   }
+
+   /**
+    * Encodes a setrow record without appending it,
+    * so that the caller can check its size first.
+    */
+   static LogWriter encode(LogMgr lm, int txnum, long prevLSN, BlockId blk, int[] offsets,
+         Object[] oldvals, Object[] newvals) {
+      LogWriter w = new LogWriter(lm, SETROW).putLong(txnum).putLong(prevLSN).putBlock(blk)
+            .putLong(offsets.length);
+      for (int i = 0; i < offsets.length; i++)
+         w.putLong(offsets[i]).putValue(oldvals[i]).putValue(newvals[i]);
+      return w;
+   }
+}
@@ -5,28 +5,50 @@ import simpledb.file.Page;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
+/**
+ * The SETSTRING log record.
+ * Only the changed part of the string is logged: the record holds
+ * the lengths of the prefix and the suffix that the old and new
+ * values share, and the old and new middles between them.
+ * Undo and redo rebuild the value they store from the value
+ * in the page, which is the new value when the record is undone
+ * and the old value when it is redone.
+ */
 public class SetStringRecord implements LogRecord {
-   private int txnum, offset;
-   private String val;
+   private int txnum, offset, prefix, suffix;
+   private long prevLSN;
+   private String oldmid, newmid;
    private BlockId blk;
 
    /**
-    * Create a new setint log record.
+    * Create a new setstring log record.
     * 
-    * @param bb the bytebuffer containing the log values
+    * @param r the reader positioned after the operator
     */
-   public SetStringRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
-      int fpos = tpos + Integer.BYTES;
-      String filename = p.getString(fpos);
-      int bpos = fpos + Page.maxLength(filename.length());
-      int blknum = p.getInt(bpos);
-      blk = new BlockId(filename, blknum);
-      int opos = bpos + Integer.BYTES;
-      offset = p.getInt(opos);
-      int vpos = opos + Integer.BYTES;
-      val = p.getString(vpos);
+   SetStringRecord(LogReader r) {
+      txnum = r.nextInt();
+      prevLSN = r.nextLong();
+      blk = r.nextBlock();
+      offset = r.nextInt();
+      prefix = r.nextInt();
+      suffix = r.nextInt();
+      oldmid = r.nextString();
+      newmid = r.nextString();
+   }
+
+   /**
+    * Create a setstring log record from its values,
+    * as it would be read from the log.
+    */
+   SetStringRecord(int txnum, long prevLSN, BlockId blk, int offset, String oldval, String newval) {
+      this.txnum = txnum;
+      this.prevLSN = prevLSN;
+      this.blk = blk;
+      this.offset = offset;
+      prefix = commonPrefix(oldval, newval);
+      suffix = commonSuffix(oldval, newval, prefix);
+      oldmid = oldval.substring(prefix, oldval.length() - suffix);
+      newmid = newval.substring(prefix, newval.length() - suffix);
    }
 
    public int op() {
@@ -37,48 +59,115 @@ public class SetStringRecord implements LogRecord {
       return txnum;
    }
 
+   public long prevLSN() {
+      return prevLSN;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
-      return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + ">";
+      return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + prefix + " " + suffix
+            + " " + oldmid + " " + newmid + ">";
    }
 
    /**
-    * Replace the specified data value with the value saved in the log record.
+    * Replace the specified data value with the old value saved in the log record.
     * The method pins a buffer to the specified block,
-    * calls setInt to restore the saved value,
-    * and unpins the buffer.
+    * rebuilds the old value from the current one, and
+    * calls applyString to write a compensation record for the change
+    * and restore the old value. It then unpins the buffer.
     * 
-    * @see simpledb.tx.recovery.LogRecord#undo(int)
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction, LogMgr, long)
     */
-   public void undo(Transaction tx) {
+   public long undo(Transaction tx, LogMgr lm, long lastLSN) {
       tx.pin(blk);
-      tx.setString(blk, offset, val, false); // don't log the undo!
+      String curval = tx.getString(blk, offset);
+      String oldval = splice(curval, prefix, suffix, oldmid);
+      long lsn = tx.applyString(blk, offset, oldval,
+            () -> CompensationRecord.writeToLog(lm, txnum, lastLSN, prevLSN, blk, offset, curval, oldval));
       tx.unpin(blk);
+      return lsn;
    }
 
    /**
-    * A static method to write a setInt record to the log.
-    * This log record contains the SETINT operator,
-    * followed by the transaction id, the filename, number,
-    * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * Store the new value, rebuilt from the current one.
+    * 
+    * @see simpledb.tx.recovery.LogRecord#redo(Page)
+    */
+   public void redo(Page p) {
+      p.setString(offset, splice(p.getString(offset), prefix, suffix, newmid));
+   }
+
+   /**
+    * Replaces the middle of the specified value,
+    * between a prefix and a suffix of the specified lengths.
+    */
+   static String splice(String val, int prefix, int suffix, String mid) {
+      return val.substring(0, prefix) + mid + val.substring(val.length() - suffix);
+   }
+
+   /**
+    * A static method to write a setString record to the log.
+    * This log record contains the SETSTRING operator,
+    * followed by the transaction id, the LSN of the
+    * transaction's previous log record, the modified block,
+    * the offset in the block, the lengths of the prefix and
+    * suffix shared by the previous and new string values
+    * at that offset, and the part of each value between them.
     * 
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val) {
-      int tpos = Integer.BYTES;
-      int fpos = tpos + Integer.BYTES;
-      int bpos = fpos + Page.maxLength(blk.fileName().length());
-      int opos = bpos + Integer.BYTES;
-      int vpos = opos + Integer.BYTES;
-      int reclen = vpos + Page.maxLength(val.length());
-      byte[] rec = new byte[reclen];
-      Page p = new Page(rec);
-      p.setInt(0, SETSTRING);
-      p.setInt(tpos, txnum);
-      p.setString(fpos, blk.fileName());
-      p.setInt(bpos, blk.number());
-      p.setInt(opos, offset);
-      p.setString(vpos, val);
-      return lm.append(rec);
+   public static long writeToLog(LogMgr lm, int txnum, long prevLSN, BlockId blk, int offset,
+         String oldval, String newval) {
+      return encode(lm, txnum, prevLSN, blk, offset, oldval, newval).append();
+   }
+
+   /**
+    * Encodes a setstring record without appending it,
+    * so that the caller can check its size first.
+    */
+   static LogWriter encode(LogMgr lm, int txnum, long prevLSN, BlockId blk, int offset,
+         String oldval, String newval) {
+      int prefix = commonPrefix(oldval, newval);
+      int suffix = commonSuffix(oldval, newval, prefix);
+      return new LogWriter(lm, SETSTRING).putLong(txnum).putLong(prevLSN).putBlock(blk)
+            .putLong(offset).putLong(prefix).putLong(suffix)
+            .putString(oldval.substring(prefix, oldval.length() - suffix))
+            .putString(newval.substring(prefix, newval.length() - suffix));
+   }
+
+   /**
+    * Returns a value halfway between the specified values:
+    * the first half of the new middle followed by the second half
+    * of the old one, between the shared prefix and suffix.
+    * A change too large for one record is logged as the change
+    * to this value followed by the change from it,
+    * each with about half of the middles.
+    */
+   static String halfway(String oldval, String newval) {
+      int prefix = commonPrefix(oldval, newval);
+      int suffix = commonSuffix(oldval, newval, prefix);
+      int oldend = oldval.length() - suffix, newend = newval.length() - suffix;
+      return oldval.substring(0, prefix) + newval.substring(prefix, prefix + (newend - prefix) / 2)
+            + oldval.substring(prefix + (oldend - prefix) / 2);
+   }
+
+   static int commonPrefix(String s1, String s2) {
+      int n = Math.min(s1.length(), s2.length());
+      int i = 0;
+      while (i < n && s1.charAt(i) == s2.charAt(i))
+         i++;
+      return i;
+   }
+
+   // the suffix may not overlap the prefix
+   static int commonSuffix(String s1, String s2, int prefix) {
+      int n = Math.min(s1.length(), s2.length()) - prefix;
+      int i = 0;
+      while (i < n && s1.charAt(s1.length() - 1 - i) == s2.charAt(s2.length() - 1 - i))
+         i++;
+      return i;
    }
-}
\ No newline at end of file
+}
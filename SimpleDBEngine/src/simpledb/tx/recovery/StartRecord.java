@@ -1,6 +1,5 @@
 package simpledb.tx.recovery;
 
-import simpledb.file.Page;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
@@ -10,11 +9,10 @@ public class StartRecord implements LogRecord {
    /**
     * Create a log record by reading one other value from the log.
     * 
-    * @param bb the bytebuffer containing the log values
+    * @param r the reader positioned after the operator
     */
-   public StartRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
+   StartRecord(LogReader r) {
+      txnum = r.nextInt();
    }
 
    public int op() {
@@ -29,7 +27,8 @@ public class StartRecord implements LogRecord {
     * Does nothing, because a start record
     * contains no undo information.
     */
-   public void undo(Transaction tx) {
+   public long undo(Transaction tx, LogMgr lm, long lastLSN) {
+      return lastLSN;
    }
 
    public String toString() {
@@ -43,11 +42,7 @@ public class StartRecord implements LogRecord {
     * 
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum) {
-      byte[] rec = new byte[2 * Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, START);
-      p.setInt(Integer.BYTES, txnum);
-      return lm.append(rec);
+   public static long writeToLog(LogMgr lm, int txnum) {
+      return new LogWriter(lm, START).putLong(txnum).append();
    }
 }
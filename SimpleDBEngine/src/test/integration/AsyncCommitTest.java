@@ -0,0 +1,70 @@
+package test.integration;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import simpledb.jdbc.DriverAdapter;
+import simpledb.jdbc.embedded.EmbeddedDriver;
+import simpledb.plan.Planner;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+public class AsyncCommitTest {
+    public static void main(String[] args) {
+        TestUtils.teardown("asynccommittest");
+        try {
+            // The delay is long enough that only the shutdown,
+            // which joins the async commit flusher, writes the commits.
+            long delay = SimpleDB.ASYNC_COMMIT_DELAY;
+            SimpleDB.ASYNC_COMMIT_DELAY = 60_000;
+            SimpleDB db = new SimpleDB("asynccommittest");
+            Planner planner = db.planner();
+            TestUtils.doUpdate(planner, db.newTx(), "create table T(A int, B varchar(10))");
+            for (int i = 1; i <= 3; i++) {
+                Transaction tx = db.newTx();
+                tx.setAsyncCommit(true);
+                TestUtils.doUpdate(planner, tx, "insert into T(A, B) values (" + i + ", 'row" + i + "')");
+            }
+            long start = System.currentTimeMillis();
+            db.shutdown();
+            long elapsed = System.currentTimeMillis() - start;
+            check(elapsed < SimpleDB.ASYNC_COMMIT_DELAY,
+                    "shutdown waited out the async commit delay: " + elapsed + " ms");
+            SimpleDB.ASYNC_COMMIT_DELAY = delay;
+
+            // Reopen the database through JDBC, committing asynchronously.
+            Properties p = new Properties();
+            p.setProperty(DriverAdapter.ASYNC_COMMIT, "true");
+            Driver d = new EmbeddedDriver();
+            try (Connection conn = d.connect("jdbc:simpledb:asynccommittest", p)) {
+                Properties info = conn.getClientInfo();
+                System.out.println("Client info: " + info);
+                check("true".equals(info.getProperty(DriverAdapter.ASYNC_COMMIT)),
+                        "the connection does not commit asynchronously");
+                Statement stmt = conn.createStatement();
+                stmt.executeUpdate("insert into T(A, B) values (4, 'row4')");
+                ResultSet rs = stmt.executeQuery("select A, B from T");
+                List<String> rows = new ArrayList<>();
+                while (rs.next())
+                    rows.add(rs.getInt("a") + " " + rs.getString("b"));
+                rs.close();
+                rows.forEach(System.out::println);
+                check(rows.equals(List.of("1 row1", "2 row2", "3 row3", "4 row4")),
+                        "an async commit was lost: " + rows);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        TestUtils.teardown("asynccommittest");
+    }
+
+    private static void check(boolean ok, String msg) {
+        if (!ok)
+            throw new AssertionError(msg);
+    }
+}
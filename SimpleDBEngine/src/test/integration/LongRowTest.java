@@ -0,0 +1,87 @@
+package test.integration;
+
+import simpledb.plan.Planner;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+public class LongRowTest {
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("crash")) {
+            crash();
+            return;
+        }
+        TestUtils.teardown("longrowtest");
+        try {
+            SimpleDB db = new SimpleDB("longrowtest");
+            Planner planner = db.planner();
+            String a = "a".repeat(96), b = "b".repeat(96);
+            String c = "c".repeat(190), d = "d".repeat(190);
+
+            TestUtils.doUpdate(planner, db.newTx(), "create table T(A varchar(96), B varchar(96))");
+            TestUtils.doUpdate(planner, db.newTx(), "create table U(C varchar(190))");
+
+            // Each insert reuses the slot of the row deleted before it,
+            // so its log records hold the old and new long strings.
+            TestUtils.doUpdate(planner, db.newTx(), "insert into T(A, B) values ('" + a + "', '" + b + "')");
+            TestUtils.doUpdate(planner, db.newTx(), "delete from T");
+            TestUtils.doUpdate(planner, db.newTx(), "insert into T(A, B) values ('" + b + "', '" + a + "')");
+            TestUtils.doUpdate(planner, db.newTx(), "insert into U(C) values ('" + c + "')");
+            TestUtils.doUpdate(planner, db.newTx(), "delete from U");
+            TestUtils.doUpdate(planner, db.newTx(), "insert into U(C) values ('" + d + "')");
+
+            // Rolling back restores the long strings from the log.
+            Transaction tx = db.newTx();
+            planner.executeUpdate("delete from T", tx);
+            planner.executeUpdate("insert into T(A, B) values ('x', 'y')", tx);
+            planner.executeUpdate("delete from U", tx);
+            planner.executeUpdate("insert into U(C) values ('z')", tx);
+            tx.rollback();
+
+            String qry = "select A, B from T";
+            TestUtils.doQuery(planner, db.newTx(), qry);
+            qry = "select C from U";
+            TestUtils.doQuery(planner, db.newTx(), qry);
+
+            // A value close to the block size is replaced in full,
+            // so both its update and its undo take several log records.
+            String v1 = "e".repeat(384), v2 = "f".repeat(384);
+            TestUtils.doUpdate(planner, db.newTx(), "create table V(E varchar(384))");
+            TestUtils.doUpdate(planner, db.newTx(), "insert into V(E) values ('" + v1 + "')");
+            tx = db.newTx();
+            planner.executeUpdate("update V set E = '" + v2 + "'", tx);
+            tx.rollback();
+            printE(planner, db.newTx(), v1);
+
+            // Crash with an uncommitted update on disk,
+            // and recover by reopening the database.
+            db.shutdown();
+            String java = System.getProperty("java.home") + "/bin/java";
+            new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    LongRowTest.class.getName(), "crash").inheritIO().start().waitFor();
+            db = new SimpleDB("longrowtest");
+            printE(db.planner(), db.newTx(), v1);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        TestUtils.teardown("longrowtest");
+    }
+
+    // Updates V, writes the change and its log records to disk
+    // without committing it, and halts.
+    private static void crash() {
+        SimpleDB db = new SimpleDB("longrowtest");
+        Transaction tx = db.newTx();
+        db.planner().executeUpdate("update V set E = '" + "f".repeat(384) + "'", tx);
+        db.bufferMgr().flushAll();
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static void printE(Planner planner, Transaction tx, String expected) {
+        Scan s = planner.createQueryPlan("select E from V", tx).open();
+        while (s.next())
+            System.out.println("E restored: " + s.getString("e").equals(expected));
+        s.close();
+        tx.commit();
+    }
+}